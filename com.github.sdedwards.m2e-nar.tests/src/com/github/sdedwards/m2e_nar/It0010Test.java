@@ -1,5 +1,6 @@
 package com.github.sdedwards.m2e_nar;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.eclipse.core.resources.IProject;
@@ -7,6 +8,8 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.Path;
 import org.junit.Test;
 
+import com.github.sdedwards.m2e_nar.internal.CProjectConfigurator;
+
 public class It0010Test extends AbstractTestBuild {
 
 	@Test
@@ -18,5 +21,7 @@ public class It0010Test extends AbstractTestBuild {
 		IProject project = buildProject(projectPath);
 		assertTrue(project.exists(Path.fromOSString(buildArtifact)));
 		assertTrue(project.exists(Path.fromOSString(testArtifact)));
+		// All configurations are committed with a single description write
+		assertEquals(1, CProjectConfigurator.getLastConfigureWriteCount(project));
 	}
 }
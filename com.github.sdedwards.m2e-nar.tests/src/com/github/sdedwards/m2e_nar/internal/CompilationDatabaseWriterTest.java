@@ -0,0 +1,124 @@
+package com.github.sdedwards.m2e_nar.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
+import com.github.sdedwards.m2e_nar.internal.model.NarCompiler;
+import com.github.sdedwards.m2e_nar.internal.model.NarExecution;
+
+public class CompilationDatabaseWriterTest {
+
+	private static final long TIME = 1400000000000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final CompilationDatabaseWriter writer = new CompilationDatabaseWriter();
+	private MavenProject mavenProject;
+	private List<NarExecution> narExecutions;
+	private File sourceDirectory;
+	private File database;
+
+	@Before
+	public void setUp() {
+		mavenProject = new MavenProject();
+		mavenProject.setFile(new File(folder.getRoot(), "pom.xml"));
+		mavenProject.getBuild().setDirectory(new File(folder.getRoot(), "target").getAbsolutePath());
+		sourceDirectory = new File(folder.getRoot(), "src/main/c");
+		final NarCompiler compiler = new NarCompiler();
+		compiler.getIncludes().add("**/*.c");
+		compiler.getSourceDirectories().add(sourceDirectory);
+		final NarBuildArtifact artifact = new NarBuildArtifact();
+		artifact.setConfigName("Shared");
+		artifact.setCSettings(compiler);
+		final NarExecution narExecution = new NarExecution((MojoExecution) null);
+		narExecution.getArtifactSettings().add(artifact);
+		narExecutions = Collections.singletonList(narExecution);
+		database = new File(folder.getRoot(), "target/m2e-nar/Shared/" + CompilationDatabaseWriter.FILE_NAME);
+	}
+
+	private static void write(final File file, final String content) throws IOException {
+		file.getParentFile().mkdirs();
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String read(final File file) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buf = new byte[(int) file.length()];
+			int offset = 0;
+			while (offset < buf.length) {
+				offset += in.read(buf, offset, buf.length - offset);
+			}
+			return new String(buf, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Updates the databases and returns whether the database was rewritten.
+	 */
+	private boolean update() {
+		assertTrue(!database.exists() || database.setLastModified(TIME));
+		writer.update(mavenProject, narExecutions);
+		return database.lastModified() != TIME;
+	}
+
+	@Test
+	public void rewritesOnlyWhenSourcesChange() throws IOException {
+		final File a = new File(sourceDirectory, "a.c");
+		final File b = new File(sourceDirectory, "sub/b.c");
+		write(a, "int a;");
+		assertTrue(update());
+		assertTrue(read(database).contains(a.getAbsolutePath()));
+		assertFalse(update());
+
+		write(b, "int b;");
+		assertTrue(update());
+		assertTrue(read(database).contains(b.getAbsolutePath()));
+		assertFalse(update());
+
+		assertTrue(a.delete());
+		assertTrue(update());
+		assertFalse(read(database).contains(a.getAbsolutePath()));
+		assertTrue(read(database).contains(b.getAbsolutePath()));
+		assertFalse(update());
+
+		// Sources which are not included do not matter
+		write(new File(sourceDirectory, "c.h"), "int c;");
+		assertFalse(update());
+	}
+
+	@Test
+	public void rewritesDeletedDatabase() throws IOException {
+		write(new File(sourceDirectory, "a.c"), "int a;");
+		assertTrue(update());
+		assertTrue(database.delete());
+		writer.update(mavenProject, narExecutions);
+		assertTrue(database.isFile());
+		assertEquals(1, read(database).split("\"file\"").length - 1);
+	}
+}
@@ -0,0 +1,119 @@
+package com.github.sdedwards.m2e_nar.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
+import com.github.sdedwards.m2e_nar.internal.model.NarCompiler;
+import com.github.sdedwards.m2e_nar.internal.model.NarExecution;
+import com.github.sdedwards.m2e_nar.internal.model.PerformanceProfile;
+
+public class NarExecutionCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject("cache-test");
+	private final IProject dependent = ResourcesPlugin.getWorkspace().getRoot().getProject("cache-test-dependent");
+
+	private static List<NarExecution> createExecutions(final String projectReference) {
+		final NarExecution narExecution = new NarExecution((MojoExecution) null);
+		final NarBuildArtifact artifact = new NarBuildArtifact();
+		artifact.setConfigName("Shared");
+		artifact.setCSettings(new NarCompiler());
+		if (projectReference != null) {
+			artifact.getProjectReferences().add(projectReference);
+		}
+		narExecution.getArtifactSettings().add(artifact);
+		return Collections.singletonList(narExecution);
+	}
+
+	private static void write(final File file, final String content) throws IOException {
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void hitOnlyWithSameFingerprint() {
+		final NarExecutionCache cache = new NarExecutionCache();
+		cache.put(project, NarExecution.MAIN, "a", createExecutions(null));
+		assertNotNull(cache.get(project, NarExecution.MAIN, "a"));
+		assertNull(cache.get(project, NarExecution.MAIN, "b"));
+		assertNull(cache.get(project, NarExecution.TEST, "a"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void hitsAreIsolatedFromTheCache() {
+		final NarExecutionCache cache = new NarExecutionCache();
+		final List<NarExecution> narExecutions = createExecutions(null);
+		cache.put(project, NarExecution.MAIN, "a", narExecutions);
+		// Changes to the stored and the returned models don't reach the cache
+		narExecutions.get(0).getArtifactSettings().get(0).getCSettings().getDefines().add("STORED");
+		final List<NarExecution> hit = cache.get(project, NarExecution.MAIN, "a");
+		hit.get(0).getArtifactSettings().get(0).getCSettings().getPerformanceProfiles().add(PerformanceProfile.LTO);
+		final List<NarExecution> next = cache.get(project, NarExecution.MAIN, "a");
+		assertNotSame(hit.get(0), next.get(0));
+		final NarCompiler compiler = next.get(0).getArtifactSettings().get(0).getCSettings();
+		assertTrue(compiler.getDefines().isEmpty());
+		assertTrue(compiler.getPerformanceProfiles().isEmpty());
+	}
+
+	@Test
+	public void invalidateRemovesDependents() {
+		final NarExecutionCache cache = new NarExecutionCache();
+		cache.put(project, NarExecution.MAIN, "a", createExecutions(null));
+		cache.put(dependent, NarExecution.MAIN, "b", createExecutions(project.getName()));
+		assertEquals(Collections.singleton(project.getName()), cache.getProjectReferences(dependent));
+		cache.invalidate(project);
+		assertNull(cache.get(project, NarExecution.MAIN, "a"));
+		assertNull(cache.get(dependent, NarExecution.MAIN, "b"));
+		assertNull(cache.getProjectReferences(dependent));
+	}
+
+	@Test
+	public void aolPropertiesFingerprintFollowsContent() throws CoreException, IOException {
+		final MavenProject mavenProject = new MavenProject();
+		mavenProject.setFile(new File(folder.getRoot(), "pom.xml"));
+		final String missing = NarExecutionCache.fingerprintAolProperties(mavenProject);
+		final File aolProperties = new File(folder.getRoot(), "aol.properties");
+		write(aolProperties, "amd64.Linux.linker=g++");
+		final String created = NarExecutionCache.fingerprintAolProperties(mavenProject);
+		assertFalse(missing.equals(created));
+		assertEquals(created, NarExecutionCache.fingerprintAolProperties(mavenProject));
+		write(aolProperties, "amd64.Linux.linker=clang++");
+		assertFalse(created.equals(NarExecutionCache.fingerprintAolProperties(mavenProject)));
+
+		// A custom location is fingerprinted instead of the base directory
+		final File custom = new File(folder.getRoot(), "custom.properties");
+		write(custom, "amd64.Linux.linker=clang++");
+		mavenProject.getProperties().setProperty("nar.aolProperties", custom.getAbsolutePath());
+		final String customFingerprint = NarExecutionCache.fingerprintAolProperties(mavenProject);
+		write(aolProperties, "amd64.Linux.linker=icpc");
+		assertEquals(customFingerprint, NarExecutionCache.fingerprintAolProperties(mavenProject));
+	}
+}
@@ -0,0 +1,136 @@
+package com.github.sdedwards.m2e_nar.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NarExtractionCacheTest {
+
+	// A multiple of the two second resolution of zip entry times
+	private static final long TIME = 1400000000000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File root;
+	private NarExtractionCache cache;
+
+	@Before
+	public void setUp() {
+		root = new File(folder.getRoot(), "cache");
+		cache = new NarExtractionCache(root, new NarLockManager());
+	}
+
+	private static String read(final File file) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buf = new byte[(int) file.length()];
+			int offset = 0;
+			while (offset < buf.length) {
+				offset += in.read(buf, offset, buf.length - offset);
+			}
+			return new String(buf, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the cache entry whose content has the header.
+	 */
+	private File getEntry(final String header) {
+		for (final File entry : root.listFiles()) {
+			if (new File(entry, "content/include/" + header).isFile()) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	private NarUnpacker.Archive unpack(final String name, final String header, final String content) throws Exception {
+		final File archive = new File(folder.getRoot(), name + ".nar");
+		NarUnpackerTest.writeArchive(archive, TIME, "include/" + header, content);
+		final NarUnpacker.Archive unpacked = new NarUnpacker.Archive(archive, new File(folder.getRoot(), "consumer-" + name));
+		cache.unpack(unpacked, false, 1000);
+		return unpacked;
+	}
+
+	@Test
+	public void directUnpackReplacesLinkedFiles() throws Exception {
+		final NarUnpacker.Archive archive = unpack("a", "a.h", "cached");
+		final File linked = new File(archive.getDirectory(), "include/a.h");
+		assertEquals("cached", read(linked));
+		final File cached = new File(getEntry("a.h"), "content/include/a.h");
+
+		// The consumer goes back to unpacking directly from a changed archive
+		NarUnpackerTest.writeArchive(archive.getFile(), TIME + 2000, "include/a.h", "direct");
+		assertTrue(archive.getFile().setLastModified(archive.getDirectory().lastModified() + 10000));
+		assertEquals(1, NarUnpacker.extract(archive.getFile(), archive.getDirectory(), false));
+		assertEquals("direct", read(linked));
+		assertEquals("cached", read(cached));
+
+		// Other consumers still link to the original content
+		final NarUnpacker.Archive other = unpack("b", "a.h", "cached");
+		assertEquals("cached", read(new File(other.getDirectory(), "include/a.h")));
+	}
+
+	@Test
+	public void extractsEachArchiveOnce() throws Exception {
+		final File archive = new File(folder.getRoot(), "a.nar");
+		NarUnpackerTest.writeArchive(archive, TIME, "include/a.h", "a");
+		assertEquals(1, cache.unpack(new NarUnpacker.Archive(archive, new File(folder.getRoot(), "first")), false, 1000));
+		assertEquals(0, cache.unpack(new NarUnpacker.Archive(archive, new File(folder.getRoot(), "second")), false, 1000));
+		assertEquals("a", read(new File(folder.getRoot(), "second/a/include/a.h")));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedUnreferencedEntries() throws Exception {
+		final NarUnpacker.Archive old = unpack("old", "old.h", "oooo");
+		final NarUnpacker.Archive recent = unpack("recent", "recent.h", "rr");
+		final NarUnpacker.Archive used = unpack("used", "used.h", "uuuuuuuu");
+		assertTrue(getEntry("old.h").setLastModified(TIME));
+		assertTrue(getEntry("recent.h").setLastModified(TIME + 60000));
+		delete(old.getDirectory());
+		delete(recent.getDirectory());
+
+		// Removing the oldest entry brings the cache within the maximum
+		final File oldLock = new File(root, getEntry("old.h").getName() + ".lock");
+		final File usedLock = new File(root, getEntry("used.h").getName() + ".lock");
+		assertTrue(oldLock.isFile());
+		final long usedSize = 8 + new File(getEntry("used.h"), "references").length();
+		cache.collectGarbage(usedSize + 2);
+		assertNull(getEntry("old.h"));
+		assertFalse(oldLock.exists());
+		assertNotNull(getEntry("recent.h"));
+		assertNotNull(getEntry("used.h"));
+
+		// Entries still referenced are kept whatever the size
+		cache.collectGarbage(0);
+		assertNull(getEntry("recent.h"));
+		assertNotNull(getEntry("used.h"));
+		assertTrue(usedLock.isFile());
+		assertEquals("uuuuuuuu", read(new File(used.getDirectory(), "include/used.h")));
+	}
+
+	private static void delete(final File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		NarUnpacker.delete(file);
+	}
+}
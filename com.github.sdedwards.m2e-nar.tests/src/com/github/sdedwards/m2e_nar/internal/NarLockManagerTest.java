@@ -0,0 +1,87 @@
+package com.github.sdedwards.m2e_nar.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NarLockManagerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static NarLockManager.Lock lockInOtherThread(final NarLockManager lockManager, final File lockFile, final long timeout) throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			return executor.submit(new Callable<NarLockManager.Lock>() {
+				public NarLockManager.Lock call() throws Exception {
+					final NarLockManager.Lock lock = lockManager.lock(lockFile, timeout);
+					if (lock != null) {
+						lock.release();
+					}
+					return lock;
+				}
+			}).get();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void timesOutWhileHeld() throws Exception {
+		final NarLockManager lockManager = new NarLockManager();
+		final File lockFile = new File(folder.getRoot(), "a.lock");
+		final NarLockManager.Lock lock = lockManager.lock(lockFile, 0);
+		assertNotNull(lock);
+		assertNull(lockInOtherThread(lockManager, lockFile, 50));
+		lock.release();
+		assertNotNull(lockInOtherThread(lockManager, lockFile, 50));
+		assertTrue(lockFile.isFile());
+
+		assertEquals(Long.valueOf(2), lockManager.getStatistics().get("narLock.acquired"));
+		assertEquals(Long.valueOf(1), lockManager.getStatistics().get("narLock.timeouts"));
+		assertNotNull(lockManager.getStatistics().get("narLock[" + lockFile.getAbsolutePath() + "].contended"));
+	}
+
+	@Test
+	public void deletesLockFileAndItsStatistics() throws Exception {
+		final NarLockManager lockManager = new NarLockManager();
+		final File lockFile = new File(folder.getRoot(), "a.lock");
+		final NarLockManager.Lock lock = lockManager.lock(lockFile, 0);
+		assertNull(lockInOtherThread(lockManager, lockFile, 10));
+		lock.releaseAndDelete();
+		assertFalse(lockFile.exists());
+		assertNull(lockManager.getStatistics().get("narLock[" + lockFile.getAbsolutePath() + "].contended"));
+
+		final NarLockManager.Lock relocked = lockManager.lock(lockFile, 0);
+		assertNotNull(relocked);
+		assertEquals(0, lockFile.length());
+		relocked.release();
+	}
+
+	@Test
+	public void locksFileLeftMarkedAsDeleted() throws Exception {
+		final File lockFile = new File(folder.getRoot(), "a.lock");
+		final FileOutputStream out = new FileOutputStream(lockFile);
+		try {
+			out.write(1);
+		} finally {
+			out.close();
+		}
+		final NarLockManager.Lock lock = new NarLockManager().lock(lockFile, 0);
+		assertNotNull(lock);
+		assertEquals(0, lockFile.length());
+		lock.release();
+	}
+}
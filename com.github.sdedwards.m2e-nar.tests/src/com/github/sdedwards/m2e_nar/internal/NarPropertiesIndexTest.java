@@ -0,0 +1,66 @@
+package com.github.sdedwards.m2e_nar.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NarPropertiesIndexTest {
+
+	private static final String ENTRY = "META-INF/nar/g/a/nar.properties";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void writeArchive(final File archive, final byte[] content) throws IOException {
+		final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+		try {
+			out.putNextEntry(new ZipEntry(ENTRY));
+			out.write(content);
+			out.closeEntry();
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void readsEntriesAndMissingArchivesQuietly() throws IOException {
+		final File archive = new File(folder.getRoot(), "a.nar");
+		writeArchive(archive, "a=1".getBytes("UTF-8"));
+		final NarPropertiesIndex index = new NarPropertiesIndex(null);
+		assertArrayEquals("a=1".getBytes("UTF-8"), index.get(archive, ENTRY));
+		assertNull(index.get(archive, "missing"));
+		assertTrue(archive.delete());
+		assertNull(index.get(archive, ENTRY));
+		assertNull(index.get(new File(folder.getRoot(), "none.nar"), ENTRY));
+	}
+
+	@Test
+	public void dropsDeletedArchivesOnLoad() throws IOException {
+		final File indexFile = new File(folder.getRoot(), "index");
+		final File kept = new File(folder.getRoot(), "kept.nar");
+		final File deleted = new File(folder.getRoot(), "deleted.nar");
+		writeArchive(kept, "a=1".getBytes("UTF-8"));
+		writeArchive(deleted, "b=2".getBytes("UTF-8"));
+		final NarPropertiesIndex index = new NarPropertiesIndex(indexFile);
+		index.get(kept, ENTRY);
+		index.get(deleted, ENTRY);
+		index.close();
+		final long fullSize = indexFile.length();
+
+		assertTrue(deleted.delete());
+		final NarPropertiesIndex reloaded = new NarPropertiesIndex(indexFile);
+		reloaded.close();
+		assertTrue(indexFile.length() < fullSize);
+		assertArrayEquals("a=1".getBytes("UTF-8"), reloaded.get(kept, ENTRY));
+	}
+}
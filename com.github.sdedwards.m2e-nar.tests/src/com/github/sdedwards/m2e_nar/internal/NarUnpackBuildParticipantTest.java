@@ -0,0 +1,99 @@
+package com.github.sdedwards.m2e_nar.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.runtime.CoreException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NarUnpackBuildParticipantTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void write(final File file, final String content) throws IOException {
+		file.getParentFile().mkdirs();
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static MavenProject createProject(final File... files) {
+		final Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+		for (final File file : files) {
+			final String type = file.getName().endsWith(".nar") ? "nar" : "jar";
+			final Artifact artifact = new DefaultArtifact("org.example", "a", "1.0", Artifact.SCOPE_COMPILE, type, null, new DefaultArtifactHandler(
+					type));
+			artifact.setFile(file);
+			artifacts.add(artifact);
+		}
+		final MavenProject mavenProject = new MavenProject();
+		mavenProject.setArtifacts(artifacts);
+		return mavenProject;
+	}
+
+	@Test
+	public void artifactFingerprintTracksAttachedNars() throws CoreException, IOException {
+		final File nar = new File(folder.getRoot(), "repo/a-1.0.nar");
+		write(nar, "nar");
+		final MavenProject mavenProject = createProject(nar);
+		final String fingerprint = NarUnpackBuildParticipant.fingerprintArtifacts(mavenProject);
+		assertEquals(fingerprint, NarUnpackBuildParticipant.fingerprintArtifacts(mavenProject));
+
+		// A classifier NAR of another AOL is picked up alongside the artifact
+		final File attached = new File(folder.getRoot(), "repo/a-1.0-amd64-Linux-gpp-shared.nar");
+		write(attached, "shared");
+		final String withAttached = NarUnpackBuildParticipant.fingerprintArtifacts(mavenProject);
+		assertFalse(fingerprint.equals(withAttached));
+		write(attached, "changed");
+		assertFalse(withAttached.equals(NarUnpackBuildParticipant.fingerprintArtifacts(mavenProject)));
+	}
+
+	@Test
+	public void artifactFingerprintIgnoresOtherTypes() throws CoreException, IOException {
+		final File jar = new File(folder.getRoot(), "repo/a-1.0.jar");
+		write(jar, "jar");
+		final MavenProject mavenProject = createProject(jar);
+		final String fingerprint = NarUnpackBuildParticipant.fingerprintArtifacts(mavenProject);
+		write(jar, "changed");
+		assertEquals(fingerprint, NarUnpackBuildParticipant.fingerprintArtifacts(mavenProject));
+	}
+
+	@Test
+	public void extractedFingerprintTracksRemovedDirectories() throws CoreException, IOException {
+		final File nar = new File(folder.getRoot(), "repo/a-1.0.nar");
+		write(nar, "nar");
+		final MavenProject mavenProject = createProject(nar);
+		final File unpackDirectory = new File(folder.getRoot(), "target/nar");
+		final List<File> unpackDirectories = Collections.singletonList(unpackDirectory);
+		write(new File(unpackDirectory, "a-1.0-amd64-Linux-gpp-shared/include/a.h"), "a");
+		final String fingerprint = NarUnpackBuildParticipant.fingerprintExtracted(mavenProject, unpackDirectories);
+
+		// Directories of other artifacts do not matter
+		assertTrue(new File(unpackDirectory, "other-1.0-noarch").mkdirs());
+		assertEquals(fingerprint, NarUnpackBuildParticipant.fingerprintExtracted(mavenProject, unpackDirectories));
+
+		assertTrue(new File(unpackDirectory, "a-1.0-amd64-Linux-gpp-shared/include/a.h").delete());
+		assertTrue(new File(unpackDirectory, "a-1.0-amd64-Linux-gpp-shared/include").delete());
+		assertTrue(new File(unpackDirectory, "a-1.0-amd64-Linux-gpp-shared").delete());
+		assertFalse(fingerprint.equals(NarUnpackBuildParticipant.fingerprintExtracted(mavenProject, unpackDirectories)));
+	}
+}
@@ -0,0 +1,89 @@
+package com.github.sdedwards.m2e_nar.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NarUnpackerTest {
+
+	// A multiple of the two second resolution of zip entry times
+	private static final long TIME = 1400000000000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	static void writeArchive(final File archive, final long time, final String... namesAndContents) throws IOException {
+		final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+		try {
+			for (int i = 0; i < namesAndContents.length; i += 2) {
+				final ZipEntry entry = new ZipEntry(namesAndContents[i]);
+				entry.setTime(time);
+				out.putNextEntry(entry);
+				out.write(namesAndContents[i + 1].getBytes("UTF-8"));
+				out.closeEntry();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void extractsOnlyChangedEntries() throws Exception {
+		final File archive = new File(folder.getRoot(), "a-1.0-amd64-Linux-gpp-shared.nar");
+		final File dir = new File(folder.getRoot(), "a-1.0-amd64-Linux-gpp-shared");
+		writeArchive(archive, TIME, "lib/libA.so", "so", "bin/tool", "tool", "include/a.h", "a");
+
+		assertEquals(3, NarUnpacker.extract(archive, dir, false));
+		assertTrue(new File(dir, "bin/tool").canExecute());
+		assertEquals(TIME, new File(dir, "include/a.h").lastModified(), 1000);
+		assertEquals(0, NarUnpacker.extract(archive, dir, false));
+
+		writeArchive(archive, TIME + 2000, "lib/libA.so", "so", "include/b.h", "b");
+		assertTrue(archive.setLastModified(dir.lastModified() + 10000));
+		assertEquals(2, NarUnpacker.extract(archive, dir, false));
+		assertTrue(new File(dir, "include/b.h").isFile());
+		assertFalse(new File(dir, "include/a.h").exists());
+		assertFalse(new File(dir, "bin").exists());
+	}
+
+	@Test
+	public void rejectsEntriesOutsideTheDirectory() throws Exception {
+		final File archive = new File(folder.getRoot(), "evil.nar");
+		writeArchive(archive, TIME, "../outside", "x");
+		try {
+			NarUnpacker.extract(archive, new File(folder.getRoot(), "evil"), false);
+			fail();
+		} catch (CoreException e) {
+			assertFalse(new File(folder.getRoot(), "outside").exists());
+		}
+	}
+
+	@Test
+	public void unpacksArchivesConcurrently() throws Exception {
+		final File unpackDirectory = new File(folder.getRoot(), "nar");
+		final File first = new File(folder.getRoot(), "a.nar");
+		final File second = new File(folder.getRoot(), "b.nar");
+		writeArchive(first, TIME, "include/a.h", "a");
+		writeArchive(second, TIME, "include/b.h", "b");
+		final List<NarUnpacker.Archive> archives = Arrays.asList(new NarUnpacker.Archive(first, unpackDirectory), new NarUnpacker.Archive(second,
+				unpackDirectory));
+		NarUnpacker.unpack(archives, false, null, 0, new NullProgressMonitor());
+		assertTrue(new File(unpackDirectory, "a/include/a.h").isFile());
+		assertTrue(new File(unpackDirectory, "b/include/b.h").isFile());
+	}
+}
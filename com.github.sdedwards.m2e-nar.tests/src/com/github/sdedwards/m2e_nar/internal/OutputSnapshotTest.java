@@ -0,0 +1,72 @@
+package com.github.sdedwards.m2e_nar.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OutputSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void write(final File file, final String content) throws IOException {
+		file.getParentFile().mkdirs();
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void refreshesCreatedRoot() throws IOException {
+		final File root = new File(folder.getRoot(), "generated");
+		final OutputSnapshot before = OutputSnapshot.take(root);
+		assertEquals(0, before.getDirectoryCount());
+
+		write(new File(root, "include/a.h"), "a");
+		write(new File(root, "b.h"), "b");
+		final OutputSnapshot after = OutputSnapshot.take(root);
+		assertEquals(Collections.singletonList(root), after.getChanges(before));
+	}
+
+	@Test
+	public void refreshesDeletedRoot() throws IOException {
+		final File root = new File(folder.getRoot(), "generated");
+		write(new File(root, "include/a.h"), "a");
+		final OutputSnapshot before = OutputSnapshot.take(root);
+
+		assertTrue(new File(root, "include/a.h").delete());
+		assertTrue(new File(root, "include").delete());
+		assertTrue(root.delete());
+		final OutputSnapshot after = OutputSnapshot.take(root);
+		assertEquals(Collections.singletonList(root), after.getChanges(before));
+	}
+
+	@Test
+	public void refreshesChangedFilesAndTopmostAddedDirectory() throws IOException {
+		final File root = new File(folder.getRoot(), "generated");
+		write(new File(root, "a.h"), "a");
+		write(new File(root, "old.h"), "old");
+		final OutputSnapshot before = OutputSnapshot.take(root);
+
+		write(new File(root, "a.h"), "changed");
+		assertTrue(new File(root, "old.h").delete());
+		write(new File(root, "include/sub/c.h"), "c");
+		final OutputSnapshot after = OutputSnapshot.take(root);
+		assertEquals(3, after.getChanges(before).size());
+		assertTrue(after.getChanges(before).contains(new File(root, "a.h")));
+		assertTrue(after.getChanges(before).contains(new File(root, "old.h")));
+		assertTrue(after.getChanges(before).contains(new File(root, "include")));
+		assertEquals(0, after.getChanges(after).size());
+	}
+}
@@ -0,0 +1,83 @@
+package com.github.sdedwards.m2e_nar.internal.cdt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.eclipse.cdt.managedbuilder.core.IBuilder;
+import org.eclipse.core.runtime.CoreException;
+import org.junit.Test;
+
+public class AbstractSettingsSynchroniserTest {
+
+	// The optimal number of jobs as CDT stores it on some machine
+	private static final int OPTIMAL = -8;
+
+	private boolean parallel;
+	private int jobs = 1;
+	private int writes;
+
+	private final IBuilder builder = (IBuilder) Proxy.newProxyInstance(AbstractSettingsSynchroniserTest.class.getClassLoader(),
+			new Class<?>[] { IBuilder.class }, new InvocationHandler() {
+				public Object invoke(final Object proxy, final Method method, final Object[] args) {
+					final String name = method.getName();
+					if ("isParallelBuildOn".equals(name)) {
+						return parallel;
+					} else if ("setParallelBuildOn".equals(name)) {
+						parallel = (Boolean) args[0];
+						++writes;
+					} else if ("setParallelizationNum".equals(name)) {
+						final int num = (Integer) args[0];
+						jobs = num > 0 ? num : OPTIMAL;
+						++writes;
+					}
+					return null;
+				}
+			});
+
+	private boolean setParallelBuild(final int maxCores) throws CoreException {
+		return AbstractSettingsSynchroniser.setParallelBuild(builder, jobs, maxCores);
+	}
+
+	@Test
+	public void storesOptimalJobsForAllCores() throws CoreException {
+		assertTrue(setParallelBuild(0));
+		assertTrue(parallel);
+		assertEquals(OPTIMAL, jobs);
+
+		// The optimal number of another machine is left alone
+		writes = 0;
+		jobs = -2;
+		assertFalse(setParallelBuild(0));
+		assertEquals(0, writes);
+	}
+
+	@Test
+	public void storesExplicitJobs() throws CoreException {
+		assertTrue(setParallelBuild(4));
+		assertEquals(4, jobs);
+		writes = 0;
+		assertFalse(setParallelBuild(4));
+		assertEquals(0, writes);
+
+		assertTrue(setParallelBuild(0));
+		assertEquals(OPTIMAL, jobs);
+		assertTrue(setParallelBuild(4));
+		assertEquals(4, jobs);
+	}
+
+	@Test
+	public void buildsSeriallyForOneCore() throws CoreException {
+		parallel = true;
+		jobs = OPTIMAL;
+		assertTrue(setParallelBuild(1));
+		assertFalse(parallel);
+		writes = 0;
+		assertFalse(setParallelBuild(1));
+		assertEquals(0, writes);
+	}
+}
@@ -0,0 +1,133 @@
+package com.github.sdedwards.m2e_nar.internal.cdt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cdt.managedbuilder.core.IConfiguration;
+import org.eclipse.cdt.managedbuilder.core.IOption;
+import org.eclipse.cdt.managedbuilder.core.ITool;
+import org.eclipse.core.runtime.CoreException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OptionSetterTest {
+
+	private static final String TOOL_ID = "gnu.c.compiler";
+	private static final String FLAGS = "gnu.c.compiler.option.misc.other";
+	private static final String PIC = "gnu.c.compiler.option.misc.pic";
+	private static final String UNDEFS = "gnu.c.compiler.option.preprocessor.undef.symbol";
+
+	// Current option values keyed by option id
+	private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+	// Option ids in the order they were written
+	private final List<String> writes = new ArrayList<String>();
+	private IConfiguration config;
+
+	private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(OptionSetterTest.class.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+
+	private IOption createOption(final String id) {
+		return proxy(IOption.class, new InvocationHandler() {
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+				final String name = method.getName();
+				if ("getId".equals(name)) {
+					return id;
+				} else if ("isExtensionElement".equals(name)) {
+					return Boolean.TRUE;
+				} else if ("getValue".equals(name)) {
+					return values.get(id);
+				} else if ("getValueType".equals(name)) {
+					return values.get(id) instanceof Boolean ? IOption.BOOLEAN : (values.get(id) instanceof String ? IOption.STRING : IOption.STRING_LIST);
+				} else if ("hashCode".equals(name)) {
+					return id.hashCode();
+				} else if ("equals".equals(name)) {
+					return proxy == args[0];
+				}
+				return null;
+			}
+		});
+	}
+
+	@Before
+	public void setUp() {
+		values.put(FLAGS, "-c");
+		values.put(PIC, Boolean.TRUE);
+		values.put(UNDEFS, new String[] { "A" });
+		final Map<String, IOption> options = new LinkedHashMap<String, IOption>();
+		for (final String id : values.keySet()) {
+			options.put(id, createOption(id));
+		}
+		final ITool tool = proxy(ITool.class, new InvocationHandler() {
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+				final String name = method.getName();
+				if ("getId".equals(name)) {
+					return TOOL_ID + ".1";
+				} else if ("getOptions".equals(name)) {
+					return options.values().toArray(new IOption[options.size()]);
+				} else if ("getOptionBySuperClassId".equals(name)) {
+					return options.get(args[0]);
+				}
+				return null;
+			}
+		});
+		config = proxy(IConfiguration.class, new InvocationHandler() {
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+				final String name = method.getName();
+				if ("getToolsBySuperClassId".equals(name)) {
+					return TOOL_ID.equals(args[0]) ? new ITool[] { tool } : new ITool[0];
+				} else if ("setOption".equals(name)) {
+					final IOption option = (IOption) args[1];
+					values.put(option.getId(), args[2]);
+					writes.add(option.getId());
+					return option;
+				}
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void writesOnlyChangedOptions() throws CoreException {
+		final OptionSetter optionSetter = new OptionSetter(config, TOOL_ID);
+		optionSetter.setOption(FLAGS, "-c");
+		optionSetter.setOption(PIC, true);
+		optionSetter.setOption(UNDEFS, new String[] { "A" });
+		assertFalse(optionSetter.commit());
+		assertTrue(writes.isEmpty());
+
+		optionSetter.setOption(FLAGS, "-c -g");
+		optionSetter.setOption(UNDEFS, new String[] { "A" });
+		assertTrue(optionSetter.commit());
+		assertEquals(1, writes.size());
+		assertEquals("-c -g", values.get(FLAGS));
+	}
+
+	@Test
+	public void clearsOptionsWhichAreNotSet() throws CoreException {
+		final OptionSetter optionSetter = new OptionSetter(config, TOOL_ID);
+		optionSetter.clearOptions();
+		optionSetter.setOption(FLAGS, "-c");
+		assertTrue(optionSetter.commit());
+		assertEquals(1, writes.size());
+		assertEquals(Boolean.FALSE, values.get(PIC));
+
+		optionSetter.clearOptions();
+		optionSetter.setOption(FLAGS, "-c");
+		assertFalse(optionSetter.commit());
+	}
+
+	@Test(expected = CoreException.class)
+	public void rejectsUnknownOptions() throws CoreException {
+		new OptionSetter(config, TOOL_ID).setOption("unknown", "x");
+	}
+}
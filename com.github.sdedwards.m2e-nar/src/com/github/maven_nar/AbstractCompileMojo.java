@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -229,6 +230,14 @@ public abstract class AbstractCompileMojo extends AbstractDependencyMojo impleme
 		return getNarInfo().getProperty(aol, "maxCores", maxCores);
 	}
 
+	public final int getMaxCores() throws MojoFailureException, MojoExecutionException {
+		return getMaxCores(getAOL());
+	}
+
+	public final Map<AttachedNarArtifact, File> getAttachedNarUnpackDirectories() throws MojoFailureException, MojoExecutionException {
+		return getAttachedNarUnpackDirectories(getLibraries());
+	}
+
 	protected final boolean useLibtool(AOL aol) throws MojoExecutionException {
 		return getNarInfo().getProperty(aol, "libtool", libtool);
 	}
@@ -25,10 +25,13 @@ package com.github.maven_nar;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.maven.artifact.Artifact;
@@ -53,8 +56,7 @@ import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.eclipse.m2e.core.project.IMavenProjectRegistry;
 
 import com.github.sdedwards.m2e_nar.internal.ConfiguratorContext;
-import com.github.sdedwards.m2e_nar.internal.MavenUtils;
-import com.github.sdedwards.m2e_nar.internal.model.NarExecution;
+import com.github.sdedwards.m2e_nar.internal.model.NarProjectNode;
 
 /**
  * @author Mark Donszelmann
@@ -266,6 +268,25 @@ public abstract class AbstractDependencyMojo extends AbstractNarMojo {
   }
 
 
+	/**
+	 * Returns the attached NAR artifacts of the dependencies with the
+	 * directories they are unpacked into.
+	 */
+	public final Map<AttachedNarArtifact, File> getAttachedNarUnpackDirectories(List<? extends Executable> libraries) throws MojoExecutionException,
+			MojoFailureException {
+		final Map<AttachedNarArtifact, File> unpackDirectories = new LinkedHashMap<AttachedNarArtifact, File>();
+		for (NarArtifact dependency : getNarArtifacts()) {
+			if (dependency.getNarInfo() == null) {
+				continue;
+			}
+			final File unpackDirectory = getArtifactDirectory(dependency, getUnpackDirectory(dependency));
+			for (AttachedNarArtifact attached : getAllAttachedNarArtifacts(Collections.singletonList(dependency), libraries)) {
+				unpackDirectories.put(attached, unpackDirectory);
+			}
+		}
+		return unpackDirectories;
+	}
+
 	public File getArtifactDirectory(NarArtifact dependency, File unpackDirectory) {
 		File targetDirectory = dependency.getNarInfo().getTargetDirectory();
 		if (targetDirectory != null) {
@@ -423,27 +444,20 @@ public abstract class AbstractDependencyMojo extends AbstractNarMojo {
 			return null;
 		}
 		getLog().debug("Found dependency project " + dependency.getProject().getName());
+		final NarProjectNode node = context.getProjectGraph().getNode(dependency, monitor);
+		if (node == null) {
+			return null;
+		}
+		getLog().debug("Found " + node.getArtifactNames().size() + " artifacts");
 		EclipseNarLayout layout = new EclipseNarLayout(getLog());
 		layout.setProject(dependency);
-		List<NarExecution> narExecutions = MavenUtils.buildCompileNarExecutions(context, dependency, monitor);
-		getLog().debug("Found " + narExecutions.size() + " compile executions");
-		com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact artifactSettings = null;
-		for (NarExecution narSettings : narExecutions) {
-			for (com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact settings : narSettings.getArtifactSettings()) {
-				layout.addArtifactName(settings.getType(), settings.getArtifactName());
-				artifactSettings = settings;
-			}
+		for (Map.Entry<String, String> artifactName : node.getArtifactNames().entrySet()) {
+			layout.addArtifactName(artifactName.getKey(), artifactName.getValue());
 		}
-		if (artifactSettings != null) {
-			for (String includePath : artifactSettings.getCSettings().getIncludePaths()) {
-				layout.addIncludeDirectory(new File(includePath));
-			}
-			for (String includePath : artifactSettings.getCppSettings().getIncludePaths()) {
-				layout.addIncludeDirectory(new File(includePath));
-			}
-			return layout;
+		for (String includePath : node.getIncludePaths()) {
+			layout.addIncludeDirectory(new File(includePath));
 		}
-		return null;
+		return layout;
 	}
 
   //
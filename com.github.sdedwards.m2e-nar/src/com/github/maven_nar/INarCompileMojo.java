@@ -19,7 +19,9 @@
  */
 package com.github.maven_nar;
 
+import java.io.File;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -32,10 +34,14 @@ public interface INarCompileMojo {
 
 	public abstract boolean isSkip();
 
+	public abstract int getMaxCores() throws MojoFailureException, MojoExecutionException;
+
 	public abstract String getOutput(String type) throws MojoFailureException, MojoExecutionException;
 
 	public abstract List<NarArtifact> getNarArtifacts();
 
+	public abstract Map<AttachedNarArtifact, File> getAttachedNarUnpackDirectories() throws MojoFailureException, MojoExecutionException;
+
 	public abstract ILinker getLinker();
 
 	public abstract List/* <ILibrary> */getLibraries();
@@ -19,18 +19,17 @@
  * 
  * 2014/09/18 Modified by Stephen Edwards:
  *  Make a public API for extracting NAR config
+ *  Read nar.properties through the plugin's archive index
  */
 package com.github.maven_nar;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.JarURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.Iterator;
 import java.util.Properties;
 import java.util.jar.JarEntry;
@@ -39,6 +38,8 @@ import java.util.jar.JarFile;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 
+import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+
 /**
  * @author Mark Donszelmann
  */
@@ -98,11 +99,20 @@ public class NarInfo {
 	}
 
 	public final boolean exists(File artifactFile) {
-		return getNarPropertiesURL(artifactFile) != null;
+		try {
+			return getNarProperties(artifactFile) != null;
+		} catch (IOException e) {
+			log.debug("Could not process artifact " + artifactFile, e);
+			return false;
+		}
 	}
 
 	public final void read(File artifactFile) throws IOException {
-		info.load(getNarPropertiesURL(artifactFile).openStream());
+		final byte[] narProperties = getNarProperties(artifactFile);
+		if (narProperties == null) {
+			throw new FileNotFoundException(getNarPropertiesPath() + " in " + artifactFile);
+		}
+		info.load(new ByteArrayInputStream(narProperties));
 	}
 
 	public final void write(File dir) throws IOException {
@@ -116,17 +126,15 @@ public class NarInfo {
 		writeToFile(propertiesFile);
 	}
 
-	private URL getNarPropertiesURL(File artifactFile) {
-		try {
-			// artifactFile can either be a directory in a multi-module compile,
-			// or a JAR in the local repository. URLClassLoader can handle this
-			// for us
-			URLClassLoader urlClassLoader = new URLClassLoader(new URL[] { artifactFile.toURI().toURL() });
-			return urlClassLoader.findResource("META-INF/nar/" + groupId + "/" + artifactId + "/" + NAR_PROPERTIES);
-		} catch (MalformedURLException e) {
-			log.error("Could not process artifact " + artifactFile, e);
-			return null;
-		}
+	private String getNarPropertiesPath() {
+		return "META-INF/nar/" + groupId + "/" + artifactId + "/" + NAR_PROPERTIES;
+	}
+
+	private byte[] getNarProperties(File artifactFile) throws IOException {
+		// artifactFile can either be a directory in a multi-module compile,
+		// or a JAR in the local repository. The index handles both and only
+		// opens each JAR once
+		return MavenNarPlugin.getDefault().getNarPropertiesIndex().get(artifactFile, getNarPropertiesPath());
 	}
 
 	/**
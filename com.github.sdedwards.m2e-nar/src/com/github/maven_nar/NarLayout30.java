@@ -20,9 +20,6 @@
 package com.github.maven_nar;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.nio.channels.FileLock;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -45,56 +42,6 @@ import org.apache.maven.project.MavenProject;
 public class NarLayout30 extends AbstractNarLayout {
 	private NarFileLayout fileLayout;
 
-	private class NarLockFile {
-
-		private File lockFile;
-
-		private FileOutputStream lockOutputStream;
-
-		private FileLock lock;
-
-		public NarLockFile(File lockFile) {
-			this.lockFile = lockFile;
-			while (true) {
-				try {
-					lockFile.getParentFile().mkdirs();
-					lockOutputStream = new FileOutputStream(lockFile);
-					lock = lockOutputStream.getChannel().lock();
-					break;
-				} catch (IOException e) {
-					getLog().debug("Locking " + lockFile + " failed: " + e.toString());
-					if (lockOutputStream != null) {
-						try {
-							lockOutputStream.close();
-						} catch (IOException e2) {
-							getLog().debug(e2);
-						}
-						lockOutputStream = null;
-					}
-					try {
-						Thread.sleep(1000);
-					} catch (InterruptedException e2) {
-						getLog().debug(e2);
-					}
-				}
-			}
-		}
-
-		public void release() {
-			lockFile.delete();
-			try {
-				lock.release();
-			} catch (IOException e) {
-				getLog().debug(e);
-			}
-			try {
-				lockOutputStream.close();
-			} catch (IOException e) {
-				getLog().debug(e);
-			}
-		}
-	}
-
 	public NarLayout30(Log log) {
 		super(log);
 		this.fileLayout = new NarFileLayout10();
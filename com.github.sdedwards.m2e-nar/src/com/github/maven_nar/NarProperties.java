@@ -27,62 +27,144 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.PropertyUtils;
 
+/**
+ * The aol.properties of the NAR plugin layered under the project override.
+ * Parsed files are shared: the plugin defaults once per plugin class loader,
+ * and override files while their size and modification time are unchanged.
+ */
 public class NarProperties {
 
 	private final static String AOL_PROPERTIES = "aol.properties";
 	private final static String CUSTOM_AOL_PROPERTY_KEY = "nar.aolProperties";
-	private Properties properties;
 
-	public NarProperties(MavenProject project, Class<?> classNearResource) throws MojoFailureException {
-		Properties defaults = null;
-		final InputStream stream = classNearResource.getResourceAsStream(AOL_PROPERTIES);
-		if (stream != null) {
-			defaults = PropertyUtils.loadProperties(stream);
-		}
-		if (defaults == null) {
-			throw new MojoFailureException("NAR: Could not load default properties file: '" + AOL_PROPERTIES + "'.");
+	// Defaults for each plugin realm; a new plugin version gets a new realm
+	private static final Map<ClassLoader, Map<String, Map<String, String>>> defaultsCache = new WeakHashMap<ClassLoader, Map<String, Map<String, String>>>();
+	private static final ConcurrentMap<String, OverrideFile> overridesCache = new ConcurrentHashMap<String, OverrideFile>();
+
+	private static final class OverrideFile {
+		private final long length;
+		private final long lastModified;
+		private final Map<String, String> properties;
+
+		private OverrideFile(final long length, final long lastModified, final Map<String, String> properties) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.properties = properties;
 		}
-		properties = new Properties(defaults);
-		FileInputStream fis = null;
+	}
+
+	private final Map<String, String> defaults;
+	private final Map<String, String> overrides;
+
+	public NarProperties(MavenProject project, Class<?> classNearResource) throws MojoFailureException {
+		defaults = getDefaults(classNearResource);
 		String customPropertyLocation = null;
-		try {
-			if (project != null) {
-				customPropertyLocation = project.getProperties().getProperty(CUSTOM_AOL_PROPERTY_KEY);
-				if (customPropertyLocation == null) {
-					// Try and read from the system property in case it's
-					// specified there
-					customPropertyLocation = System.getProperties().getProperty(CUSTOM_AOL_PROPERTY_KEY);
+		Map<String, String> projectOverrides = Collections.emptyMap();
+		if (project != null) {
+			customPropertyLocation = project.getProperties().getProperty(CUSTOM_AOL_PROPERTY_KEY);
+			if (customPropertyLocation == null) {
+				// Try and read from the system property in case it's
+				// specified there
+				customPropertyLocation = System.getProperties().getProperty(CUSTOM_AOL_PROPERTY_KEY);
+			}
+			final File file = new File(customPropertyLocation != null ? customPropertyLocation : project.getBasedir() + File.separator + AOL_PROPERTIES);
+			try {
+				projectOverrides = getOverrides(file);
+			} catch (FileNotFoundException e) {
+				if (customPropertyLocation != null) {
+					// We tried loading from a custom location - so throw the
+					// exception
+					throw new MojoFailureException("NAR: Could not load custom properties file: '" + customPropertyLocation + "'.");
 				}
-				fis = new FileInputStream(customPropertyLocation != null ? customPropertyLocation : project.getBasedir() + File.separator + AOL_PROPERTIES);
-				properties.load(fis);
+			} catch (IOException e) {
+				// ignore (FIXME)
 			}
-		} catch (FileNotFoundException e) {
-			if (customPropertyLocation != null) {
-				// We tried loading from a custom location - so throw the
-				// exception
-				throw new MojoFailureException("NAR: Could not load custom properties file: '" + customPropertyLocation + "'.");
+		}
+		overrides = projectOverrides;
+	}
+
+	private static Map<String, String> getDefaults(final Class<?> classNearResource) throws MojoFailureException {
+		final URL resource = classNearResource.getResource(AOL_PROPERTIES);
+		if (resource == null) {
+			throw new MojoFailureException("NAR: Could not load default properties file: '" + AOL_PROPERTIES + "'.");
+		}
+		final String key = resource.toExternalForm();
+		final ClassLoader classLoader = classNearResource.getClassLoader();
+		synchronized (defaultsCache) {
+			final Map<String, Map<String, String>> realmDefaults = defaultsCache.get(classLoader);
+			if (realmDefaults != null && realmDefaults.containsKey(key)) {
+				return realmDefaults.get(key);
 			}
+		}
+		Properties properties = null;
+		try {
+			final InputStream stream = resource.openStream();
+			properties = PropertyUtils.loadProperties(stream);
 		} catch (IOException e) {
-			// ignore (FIXME)
+			// handled below
+		}
+		if (properties == null) {
+			throw new MojoFailureException("NAR: Could not load default properties file: '" + AOL_PROPERTIES + "'.");
+		}
+		final Map<String, String> parsed = toMap(properties);
+		synchronized (defaultsCache) {
+			Map<String, Map<String, String>> realmDefaults = defaultsCache.get(classLoader);
+			if (realmDefaults == null) {
+				realmDefaults = new HashMap<String, Map<String, String>>();
+				defaultsCache.put(classLoader, realmDefaults);
+			}
+			realmDefaults.put(key, parsed);
+		}
+		return parsed;
+	}
+
+	private static Map<String, String> getOverrides(final File file) throws IOException {
+		final String key = file.getAbsolutePath();
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+		final OverrideFile cached = overridesCache.get(key);
+		if (cached != null && cached.length == length && cached.lastModified == lastModified && file.isFile()) {
+			return cached.properties;
+		}
+		final Properties properties = new Properties();
+		final FileInputStream fis = new FileInputStream(file);
+		try {
+			properties.load(fis);
 		} finally {
 			try {
-				if (fis != null) {
-					fis.close();
-				}
+				fis.close();
 			} catch (IOException e) {
 				// ignore
 			}
 		}
+		final Map<String, String> parsed = toMap(properties);
+		overridesCache.put(key, new OverrideFile(length, lastModified, parsed));
+		return parsed;
+	}
 
+	private static Map<String, String> toMap(final Properties properties) {
+		final Map<String, String> map = new HashMap<String, String>();
+		for (final String name : properties.stringPropertyNames()) {
+			map.put(name, properties.getProperty(name));
+		}
+		return Collections.unmodifiableMap(map);
 	}
 
 	public String getProperty(String key) {
-		return properties.getProperty(key);
+		final String value = overrides.get(key);
+		return value != null ? value : defaults.get(key);
 	}
 }
@@ -19,6 +19,14 @@
  */
 package com.github.sdedwards.m2e_nar;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.m2e.core.internal.MavenPluginActivator;
@@ -28,6 +36,16 @@ import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
 import com.github.sdedwards.m2e_nar.internal.BuildPathManager;
+import com.github.sdedwards.m2e_nar.internal.CompilationDatabaseWriter;
+import com.github.sdedwards.m2e_nar.internal.NarExecutionCache;
+import com.github.sdedwards.m2e_nar.internal.NarExtractionCache;
+import com.github.sdedwards.m2e_nar.internal.NarLockManager;
+import com.github.sdedwards.m2e_nar.internal.NarPropertiesIndex;
+import com.github.sdedwards.m2e_nar.internal.NarUnpackBuildParticipant;
+import com.github.sdedwards.m2e_nar.internal.PhaseTimings;
+import com.github.sdedwards.m2e_nar.internal.WorkspacePathResolver;
+import com.github.sdedwards.m2e_nar.internal.cdt.CompilerLauncher;
+import com.github.sdedwards.m2e_nar.internal.cdt.NarIndexerControl;
 
 @SuppressWarnings("restriction")
 public class MavenNarPlugin extends AbstractUIPlugin {
@@ -38,6 +56,22 @@ public class MavenNarPlugin extends AbstractUIPlugin {
 
 	private BuildPathManager buildpathManager = null;
 
+	private final NarExecutionCache narExecutionCache = new NarExecutionCache();
+
+	private NarPropertiesIndex narPropertiesIndex = null;
+
+	private NarExtractionCache narExtractionCache = null;
+
+	private final NarLockManager narLockManager = new NarLockManager();
+
+	private final CompilationDatabaseWriter compilationDatabaseWriter = new CompilationDatabaseWriter();
+
+	private final NarIndexerControl indexerControl = new NarIndexerControl();
+
+	private final WorkspacePathResolver workspacePathResolver = new WorkspacePathResolver();
+
+	private final PhaseTimings phaseTimings = new PhaseTimings(!"false".equals(Platform.getDebugOption(PLUGIN_ID + "/debug/timing")));
+
 	public void logError(String msg) {
 		getLog().log(new Status(Status.ERROR, PLUGIN_ID, msg));
 	}
@@ -74,6 +108,14 @@ public class MavenNarPlugin extends AbstractUIPlugin {
 			new Throwable().printStackTrace();
 		}
 
+		this.narPropertiesIndex = new NarPropertiesIndex(getStateLocation().append("nar-properties.index").toFile());
+		this.narExtractionCache = new NarExtractionCache(getStateLocation().append("nar-cache").toFile(), narLockManager);
+
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(workspacePathResolver,
+				IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE | IResourceChangeEvent.POST_CHANGE);
+
+		CCorePlugin.getIndexManager().addIndexerSetupParticipant(indexerControl);
+
 		// Make sure the m2e jdt plugin is initialised first
 		MavenJdtPlugin.getDefault();
 
@@ -99,7 +141,12 @@ public class MavenNarPlugin extends AbstractUIPlugin {
 	 */
 	public void stop(BundleContext context) throws Exception {
 		MavenProjectManager projectManager = MavenPluginActivator.getDefault().getMavenProjectManager();
-		projectManager.removeMavenProjectChangedListener(buildpathManager);
+		if (buildpathManager != null) {
+			projectManager.removeMavenProjectChangedListener(buildpathManager);
+			buildpathManager.cancel();
+		}
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(workspacePathResolver);
+		CCorePlugin.getIndexManager().removeIndexerSetupParticipant(indexerControl);
 
 		/*
 		 * workspace.removeResourceChangeListener(this.buildpathManager);
@@ -113,12 +160,86 @@ public class MavenNarPlugin extends AbstractUIPlugin {
 		 * = null;
 		 */
 		this.buildpathManager = null;
+		if (phaseTimings.isEnabled()) {
+			writeTimingReport();
+			if (Boolean.parseBoolean(Platform.getDebugOption(PLUGIN_ID + "/debug/timing/log"))) {
+				log(phaseTimings.toJson(getTimingCounters()));
+			}
+		}
+		narExecutionCache.invalidateAll();
+		workspacePathResolver.clear();
+		compilationDatabaseWriter.clear();
+		if (narPropertiesIndex != null) {
+			narPropertiesIndex.close();
+		}
 	}
 
 	public static MavenNarPlugin getDefault() {
 		return instance;
 	}
 
+	public BuildPathManager getBuildPathManager() {
+		return buildpathManager;
+	}
+
+	public NarExecutionCache getNarExecutionCache() {
+		return narExecutionCache;
+	}
+
+	public NarPropertiesIndex getNarPropertiesIndex() {
+		return narPropertiesIndex;
+	}
+
+	public NarExtractionCache getNarExtractionCache() {
+		return narExtractionCache;
+	}
+
+	public CompilationDatabaseWriter getCompilationDatabaseWriter() {
+		return compilationDatabaseWriter;
+	}
+
+	public NarIndexerControl getIndexerControl() {
+		return indexerControl;
+	}
+
+	public WorkspacePathResolver getWorkspacePathResolver() {
+		return workspacePathResolver;
+	}
+
+	public PhaseTimings getPhaseTimings() {
+		return phaseTimings;
+	}
+
+	/**
+	 * Writes the phase timings of the workspace to timings.json in the plugin
+	 * state location.
+	 * 
+	 * @return the report file, or null if it could not be written
+	 */
+	public File writeTimingReport() {
+		final File file = getStateLocation().append("timings.json").toFile();
+		try {
+			phaseTimings.writeJson(file, getTimingCounters());
+			return file;
+		} catch (IOException e) {
+			logError("Could not write " + file, e);
+			return null;
+		}
+	}
+
+	private Map<String, Long> getTimingCounters() {
+		final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+		counters.put("narExecutionCache.hits", narExecutionCache.getHitCount());
+		counters.put("narExecutionCache.misses", narExecutionCache.getMissCount());
+		counters.put("workspacePathResolver.hits", workspacePathResolver.getHitCount());
+		counters.put("workspacePathResolver.misses", workspacePathResolver.getMissCount());
+		counters.put("narUnpack.runs", NarUnpackBuildParticipant.getRunCount());
+		counters.put("narUnpack.skips", NarUnpackBuildParticipant.getSkipCount());
+		counters.putAll(CompilerLauncher.getStatistics());
+		counters.putAll(narLockManager.getStatistics());
+		return counters;
+	}
+
 	/*
 	 * public IClasspathManager getBuildpathManager() { return buildpathManager;
 	 * } /* /**
@@ -19,37 +19,78 @@
  */
 package com.github.sdedwards.m2e_nar.internal;
 
+import java.io.File;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
 
 import org.eclipse.cdt.core.model.CoreModel;
 import org.eclipse.cdt.core.settings.model.ICConfigurationDescription;
 import org.eclipse.cdt.core.settings.model.ICProjectDescription;
 import org.eclipse.cdt.core.settings.model.ICProjectDescriptionManager;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.m2e.core.project.IMavenProjectChangedListener;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.eclipse.m2e.core.project.IMavenProjectRegistry;
 import org.eclipse.m2e.core.project.MavenProjectChangedEvent;
+import org.eclipse.osgi.util.NLS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+import com.github.sdedwards.m2e_nar.internal.PhaseTimings.Phase;
 import com.github.sdedwards.m2e_nar.internal.cdt.AbstractSettingsSynchroniser;
+import com.github.sdedwards.m2e_nar.internal.cdt.CdtUtils;
+import com.github.sdedwards.m2e_nar.internal.cdt.CompilerLauncher;
+import com.github.sdedwards.m2e_nar.internal.cdt.NarIndexerControl;
+import com.github.sdedwards.m2e_nar.internal.cdt.NarLanguageSettingsProvider;
+import com.github.sdedwards.m2e_nar.internal.cdt.SettingsChangeSet;
 import com.github.sdedwards.m2e_nar.internal.cdt.SettingsSynchroniser;
 import com.github.sdedwards.m2e_nar.internal.cdt.SynchroniserFactory;
 import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
 import com.github.sdedwards.m2e_nar.internal.model.NarExecution;
+import com.github.sdedwards.m2e_nar.internal.model.PerformanceProfile;
 
 public class BuildPathManager implements IMavenProjectChangedListener {
 
 	private static final Logger logger = LoggerFactory.getLogger(BuildPathManager.class);
 	private final IMavenProjectRegistry projectManager;
 
+	private static final String NAR_PLUGIN_ARTIFACT_ID = "nar-maven-plugin";
+	private static final String NAR_TYPE = "nar";
+
+	// Maximum number of projects updated concurrently
+	private final int maxConcurrentUpdates = Runtime.getRuntime().availableProcessors();
+
+	// Projects waiting to be updated, with the projects they depend on
+	private final Map<IProject, Set<IProject>> pending = new LinkedHashMap<IProject, Set<IProject>>();
+	// Projects currently being updated
+	private final Set<IProject> running = new HashSet<IProject>();
+	// Projects which changed again while being updated
+	private final Set<IProject> rerun = new HashSet<IProject>();
+	// The NAR inputs of each project when it last changed, so that files
+	// such as aol.properties are compared with their previous content
+	private final ConcurrentMap<IProject, String> narInputs = new ConcurrentHashMap<IProject, String>();
+
 	public BuildPathManager(IMavenProjectRegistry projectManager) {
 		this.projectManager = projectManager;
 	}
@@ -57,16 +98,228 @@ public class BuildPathManager implements IMavenProjectChangedListener {
 	@Override
 	public void mavenProjectChanged(MavenProjectChangedEvent[] events, IProgressMonitor monitor) {
 		monitor.setTaskName(Messages.BuildPathManager_setting_paths);
-		final Set<IProject> projects = new HashSet<IProject>();
+		final Set<IProject> projects = new LinkedHashSet<IProject>();
 		for (final MavenProjectChangedEvent event : events) {
 			final IProject project = event.getSource().getProject();
-			if (project.isAccessible() && projects.add(project)) {
-				try {
+			if (event.getKind() == MavenProjectChangedEvent.KIND_REMOVED) {
+				MavenNarPlugin.getDefault().getNarExecutionCache().invalidate(project);
+				narInputs.remove(project);
+				synchronized (this) {
+					pending.remove(project);
+					rerun.remove(project);
+				}
+			} else if (project.isAccessible()) {
+				if (hasNarChanges(event)) {
+					projects.add(project);
+				} else {
+					logger.debug("No NAR changes to project " + project.getName());
+				}
+			}
+		}
+		scheduleUpdates(projects);
+	}
+
+	/**
+	 * Returns true if the change could affect the NAR settings of the project,
+	 * or if this cannot be determined.
+	 */
+	private boolean hasNarChanges(final MavenProjectChangedEvent event) {
+		final IMavenProjectFacade oldFacade = event.getOldMavenProject();
+		final IMavenProjectFacade newFacade = event.getMavenProject();
+		if (newFacade == null) {
+			return true;
+		}
+		final String newInputs = getNarInputs(newFacade);
+		String oldInputs = newInputs != null ? narInputs.put(newFacade.getProject(), newInputs) : narInputs.remove(newFacade.getProject());
+		if (oldInputs == null && oldFacade != null) {
+			oldInputs = getNarInputs(oldFacade);
+		}
+		return oldInputs == null || !oldInputs.equals(newInputs);
+	}
+
+	/**
+	 * Describes the parts of a project that the NAR settings are built from:
+	 * packaging, nar-maven-plugin configuration, NAR and workspace
+	 * dependencies, the location and content of aol.properties and the
+	 * language settings provider property.
+	 * 
+	 * @return the inputs, or null if they cannot be read and the project must
+	 *         be treated as changed
+	 */
+	private String getNarInputs(final IMavenProjectFacade facade) {
+		final MavenProject mavenProject = facade.getMavenProject();
+		if (mavenProject == null) {
+			return null;
+		}
+		final StringBuilder inputs = new StringBuilder();
+		inputs.append(mavenProject.getPackaging()).append('\n');
+		for (final Plugin plugin : mavenProject.getBuildPlugins()) {
+			if (NAR_PLUGIN_ARTIFACT_ID.equals(plugin.getArtifactId())) {
+				inputs.append(plugin.getKey()).append(':').append(plugin.getVersion()).append('\n');
+				inputs.append(plugin.getConfiguration()).append('\n');
+				for (final PluginExecution execution : plugin.getExecutions()) {
+					inputs.append(execution.getId()).append(execution.getGoals()).append('\n');
+					inputs.append(execution.getConfiguration()).append('\n');
+				}
+			}
+		}
+		for (final Artifact artifact : mavenProject.getArtifacts()) {
+			final boolean workspaceProject = projectManager.getMavenProject(artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion()) != null;
+			if (NAR_TYPE.equals(artifact.getType()) || workspaceProject) {
+				inputs.append(artifact.getId()).append(':').append(artifact.getScope());
+				final File file = artifact.getFile();
+				if (file != null) {
+					inputs.append(':').append(file.getAbsolutePath()).append(':').append(file.length()).append(':').append(file.lastModified());
+				}
+				inputs.append('\n');
+			}
+		}
+		try {
+			inputs.append(NarExecutionCache.fingerprintAolProperties(mavenProject)).append('\n');
+		} catch (CoreException e) {
+			logger.debug("Could not read aol.properties of " + mavenProject.getId(), e);
+			return null;
+		}
+		inputs.append(NarLanguageSettingsProvider.isEnabled(mavenProject)).append('\n');
+		inputs.append(CompilerLauncher.getLauncher(mavenProject)).append('\n');
+		inputs.append(mavenProject.getProperties().getProperty(PerformanceProfile.PROPERTY_KEY)).append('\n');
+		return inputs.toString();
+	}
+
+	/**
+	 * Cancels any outstanding build path updates.
+	 */
+	public void cancel() {
+		synchronized (this) {
+			pending.clear();
+			rerun.clear();
+		}
+		Job.getJobManager().cancel(this);
+	}
+
+	/**
+	 * Queues the projects for update. Each project is updated by its own job
+	 * holding the project as its scheduling rule. A project is only started
+	 * once the queued projects it depends on have been updated, and at most
+	 * one job per available processor runs at a time.
+	 */
+	private synchronized void scheduleUpdates(final Set<IProject> projects) {
+		for (final IProject project : projects) {
+			if (running.contains(project)) {
+				rerun.add(project);
+			} else if (!pending.containsKey(project)) {
+				pending.put(project, getDependencies(project));
+			}
+		}
+		startUpdates();
+	}
+
+	/**
+	 * Queues a single project for update.
+	 */
+	public void scheduleUpdate(final IProject project) {
+		scheduleUpdates(Collections.singleton(project));
+	}
+
+	private synchronized void updateFinished(final IProject project) {
+		running.remove(project);
+		if (rerun.remove(project) && project.isAccessible()) {
+			pending.put(project, getDependencies(project));
+		}
+		startUpdates();
+	}
+
+	private synchronized void startUpdates() {
+		while (running.size() < maxConcurrentUpdates && !pending.isEmpty()) {
+			IProject next = null;
+			for (final Map.Entry<IProject, Set<IProject>> entry : pending.entrySet()) {
+				if (!isBlocked(entry.getKey(), entry.getValue())) {
+					next = entry.getKey();
+					break;
+				}
+			}
+			if (next == null) {
+				if (!running.isEmpty()) {
+					// Wait for the running updates to unblock the rest
+					break;
+				}
+				// The remaining projects depend on each other so break the
+				// cycle with the first one
+				next = pending.keySet().iterator().next();
+				logger.debug("Dependency cycle when updating build paths, starting with " + next.getName());
+			}
+			pending.remove(next);
+			running.add(next);
+			new UpdateBuildPathsJob(next).schedule();
+		}
+	}
+
+	private boolean isBlocked(final IProject project, final Set<IProject> dependencies) {
+		for (final IProject dependency : dependencies) {
+			if (!dependency.equals(project) && (pending.containsKey(dependency) || running.contains(dependency))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the workspace projects the project depends on, using the NAR
+	 * project references if the NAR model has been built, otherwise the
+	 * workspace projects its Maven dependencies resolve to.
+	 */
+	private Set<IProject> getDependencies(final IProject project) {
+		final Set<IProject> dependencies = new HashSet<IProject>();
+		final Set<String> projectReferences = MavenNarPlugin.getDefault().getNarExecutionCache().getProjectReferences(project);
+		if (projectReferences != null) {
+			final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+			for (final String projectName : projectReferences) {
+				dependencies.add(root.getProject(projectName));
+			}
+		} else {
+			final IMavenProjectFacade facade = projectManager.getProject(project);
+			final MavenProject mavenProject = facade != null ? facade.getMavenProject() : null;
+			if (mavenProject != null) {
+				for (final Artifact artifact : mavenProject.getArtifacts()) {
+					final IMavenProjectFacade dependency = projectManager.getMavenProject(artifact.getGroupId(), artifact.getArtifactId(),
+							artifact.getBaseVersion());
+					if (dependency != null) {
+						dependencies.add(dependency.getProject());
+					}
+				}
+			}
+		}
+		return dependencies;
+	}
+
+	private class UpdateBuildPathsJob extends Job {
+		private final IProject project;
+
+		public UpdateBuildPathsJob(final IProject project) {
+			super(NLS.bind(Messages.BuildPathManager_job_name, project.getName()));
+			this.project = project;
+			setRule(project);
+		}
+
+		@Override
+		public boolean belongsTo(Object family) {
+			return family == BuildPathManager.this;
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			try {
+				if (project.isAccessible() && !monitor.isCanceled()) {
 					updateBuildPaths(project, monitor);
-				} catch (final CoreException e) {
-					MavenNarPlugin.getDefault().logError("Problem when updating build paths", e);
 				}
+			} catch (final CoreException e) {
+				MavenNarPlugin.getDefault().logError("Problem when updating build paths", e);
+			} finally {
+				// Start the next updates while this job is still running so
+				// the job manager does not go idle in between
+				updateFinished(project);
 			}
+			return Status.OK_STATUS;
 		}
 	}
 
@@ -76,41 +329,66 @@ public class BuildPathManager implements IMavenProjectChangedListener {
 			final ICProjectDescriptionManager mngr = CoreModel.getDefault().getProjectDescriptionManager();
 			final ICProjectDescription des = mngr.getProjectDescription(project, true);
 			if (des != null) {
-				boolean changed = false;
-				logger.debug("updateBuildPaths: project=" + project.getName());
-				final ConfiguratorContext context = new ConfiguratorContext(MavenPlugin.getMaven(), projectManager);
-				List<NarExecution> narExecutions = MavenUtils.buildCompileNarExecutions(context, facade, monitor);
-				narExecutions.addAll(MavenUtils.buildTestCompileNarExecutions(context, facade, monitor));
-				for (NarExecution narSettings : narExecutions) {
-					if (!narSettings.isSkip()) {
-						final String os = narSettings.getOS();
-						final String linkerName = narSettings.getLinkerName();
-						final AbstractSettingsSynchroniser synchro = SynchroniserFactory.getSettingsSynchroniser(os, linkerName);
-						changed = updateCdtBuildPaths(des, synchro, narSettings);
+				// Hold back indexing while the settings are changed
+				final NarIndexerControl indexerControl = MavenNarPlugin.getDefault().getIndexerControl();
+				indexerControl.suspend(project);
+				try {
+					final SettingsChangeSet changes = new SettingsChangeSet();
+					logger.debug("updateBuildPaths: project=" + project.getName());
+					final ConfiguratorContext context = new ConfiguratorContext(MavenPlugin.getMaven(), projectManager);
+					List<NarExecution> narExecutions = MavenUtils.buildNarExecutions(context, facade, monitor);
+					for (NarExecution narSettings : narExecutions) {
+						if (!narSettings.isSkip()) {
+							final String os = narSettings.getOS();
+							final String linkerName = narSettings.getLinkerName();
+							final AbstractSettingsSynchroniser synchro = SynchroniserFactory.getSettingsSynchroniser(os, linkerName);
+							changes.addAll(updateCdtBuildPaths(project, des, synchro, narSettings));
+						}
 					}
-				}
-				if (changed) {
-					mngr.setProjectDescription(project, des);
+					if (!changes.isEmpty()) {
+						logger.debug("updateBuildPaths: writing changes " + changes);
+						CdtUtils.setProjectDescription(project, des);
+					} else {
+						logger.debug("updateBuildPaths: no changes");
+					}
+					MavenNarPlugin.getDefault().getNarExecutionCache().setSynchronised(project, narExecutions);
+					NarLanguageSettingsProvider.update(project, des, narExecutions);
+					final PhaseTimings timings = MavenNarPlugin.getDefault().getPhaseTimings();
+					final long start = timings.start();
+					MavenNarPlugin.getDefault().getCompilationDatabaseWriter().update(facade.getMavenProject(), narExecutions);
+					timings.record(Phase.COMPILATION_DATABASE, project.getName(), start);
+				} finally {
+					indexerControl.resume(project);
 				}
 			}
 		}
 	}
 
-	private boolean updateCdtBuildPaths(final ICProjectDescription des, final SettingsSynchroniser synchro, final NarExecution narSettings)
-			throws CoreException {
-		boolean changed = false;
+	/**
+	 * Synchronises the paths of the configurations of the execution whose
+	 * settings have changed.
+	 */
+	private SettingsChangeSet updateCdtBuildPaths(final IProject project, final ICProjectDescription des, final SettingsSynchroniser synchro,
+			final NarExecution narSettings) throws CoreException {
+		final NarExecutionCache cache = MavenNarPlugin.getDefault().getNarExecutionCache();
+		final SettingsChangeSet changes = new SettingsChangeSet();
 		for (NarBuildArtifact artifactSettings : narSettings.getArtifactSettings()) {
 			final String configName = artifactSettings.getConfigName();
 			final ICConfigurationDescription cfg = des.getConfigurationByName(configName);
-			if (cfg != null) {
+			final NarBuildArtifact synchronisedSettings = cache.getSynchronised(project, configName);
+			if (synchronisedSettings != null && synchronisedSettings.hasSamePaths(artifactSettings)) {
+				logger.debug("updateBuildPaths: config " + configName + " is unchanged");
+			} else if (cfg != null) {
 				logger.debug("updateBuildPaths: updating config " + configName);
-				synchro.pathsOnlySync(cfg, artifactSettings);
-				changed = true;
+				final PhaseTimings timings = MavenNarPlugin.getDefault().getPhaseTimings();
+				final long start = timings.start();
+				changes.addAll(synchro.pathsOnlySync(cfg, artifactSettings));
+				timings.record(Phase.SYNCHRONISE, project.getName(), start);
 			} else {
 				logger.debug("updateBuildPaths: could not find config " + configName);
 			}
 		}
-		return changed;
+		return changes;
 	}
 
 }
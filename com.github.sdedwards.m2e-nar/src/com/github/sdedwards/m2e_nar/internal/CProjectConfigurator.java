@@ -21,6 +21,8 @@ package com.github.sdedwards.m2e_nar.internal;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.maven.plugin.MojoExecution;
 import org.eclipse.cdt.core.CCProjectNature;
@@ -62,8 +64,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+import com.github.sdedwards.m2e_nar.internal.PhaseTimings.Phase;
 import com.github.sdedwards.m2e_nar.internal.cdt.AbstractSettingsSynchroniser;
 import com.github.sdedwards.m2e_nar.internal.cdt.CdtUtils;
+import com.github.sdedwards.m2e_nar.internal.cdt.NarIndexerControl;
+import com.github.sdedwards.m2e_nar.internal.cdt.NarLanguageSettingsProvider;
+import com.github.sdedwards.m2e_nar.internal.cdt.SettingsChangeSet;
 import com.github.sdedwards.m2e_nar.internal.cdt.SynchroniserFactory;
 import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
 import com.github.sdedwards.m2e_nar.internal.model.NarExecution;
@@ -75,6 +81,26 @@ public class CProjectConfigurator extends AbstractProjectConfigurator {
 	public static final String CONFIGURATOR_ID = "com.github.sdedwards.m2e_nar.cConfigurator";
 	public static final String JAVA_CONFIGURATOR_ID = "org.eclipse.m2e.jdt.javaConfigurator";
 
+	private static final ConcurrentMap<IProject, Integer> lastConfigureWrites = new ConcurrentHashMap<IProject, Integer>();
+
+	// Extension tool chains keyed by tool chain name and artefact type
+	private static final ConcurrentMap<String, IToolChain> toolChains = new ConcurrentHashMap<String, IToolChain>();
+	// Extension configurations keyed by tool chain id and artefact type
+	private static final ConcurrentMap<String, ExtensionConfigs> extensionConfigurations = new ConcurrentHashMap<String, ExtensionConfigs>();
+
+	private static final class ExtensionConfigs {
+		// The first configuration, which provides the managed project type
+		private final IConfiguration first;
+		// The release configuration if there is one, which new configurations
+		// are created from
+		private final IConfiguration base;
+
+		private ExtensionConfigs(final IConfiguration first, final IConfiguration base) {
+			this.first = first;
+			this.base = base;
+		}
+	}
+
 	@Override
 	public void configure(ProjectConfigurationRequest request, IProgressMonitor monitor) throws CoreException {
 
@@ -86,30 +112,69 @@ public class CProjectConfigurator extends AbstractProjectConfigurator {
 
 		logger.info("configure");
 
-		ICProjectDescriptionManager mngr = CoreModel.getDefault().getProjectDescriptionManager();
-
-		// Set the first created configuration as active.
-		boolean setActive = true;
-		final IMavenProjectFacade facade = request.getMavenProjectFacade();
-		List<NarExecution> narExecutions = MavenUtils.buildCompileNarExecutions(context, facade, monitor);
-		narExecutions.addAll(MavenUtils.buildTestCompileNarExecutions(context, facade, monitor));
-		for (NarExecution narSettings : narExecutions) {
-			if (!narSettings.isSkip()) {
-				final String os = narSettings.getOS();
-				final String linkerName = narSettings.getLinkerName();
-				final AbstractSettingsSynchroniser synchro = SynchroniserFactory.getSettingsSynchroniser(os, linkerName);
-				final String toolchain = synchro.getToolchain();
-				for (NarBuildArtifact artifactSettings : narSettings.getArtifactSettings()) {
-					final String configName = artifactSettings.getConfigName();
-					final String cdtArtefactType = CdtUtils.convertArtefactType(artifactSettings.getType());
-					IToolChain tc = getToolChain(toolchain, cdtArtefactType);
-					ICProjectDescription desc = getCdtProject(project, tc, cdtArtefactType, monitor);
-					ICConfigurationDescription cfg = getCdtMavenConfig(project, desc, tc, cdtArtefactType, configName, setActive, monitor);
-					setActive = false;
-					synchro.fullSync(cfg, artifactSettings);
-					mngr.setProjectDescription(project, desc);
+		// Hold back indexing while the settings are changed
+		final NarIndexerControl indexerControl = MavenNarPlugin.getDefault().getIndexerControl();
+		indexerControl.suspend(project);
+		try {
+			final int initialWrites = CdtUtils.getProjectDescriptionWriteCount(project);
+
+			// All configurations are created against a single writable
+			// description which is committed once at the end of the pass
+			ICProjectDescription desc = null;
+			final SettingsChangeSet changes = new SettingsChangeSet();
+			boolean structureChanged = !project.hasNature(CCProjectNature.CC_NATURE_ID);
+			// Set the first created configuration as active.
+			boolean setActive = true;
+			final IMavenProjectFacade facade = request.getMavenProjectFacade();
+			List<NarExecution> narExecutions = MavenUtils.buildNarExecutions(context, facade, monitor);
+			for (NarExecution narSettings : narExecutions) {
+				if (!narSettings.isSkip()) {
+					final String os = narSettings.getOS();
+					final String linkerName = narSettings.getLinkerName();
+					final AbstractSettingsSynchroniser synchro = SynchroniserFactory.getSettingsSynchroniser(os, linkerName);
+					final String toolchain = synchro.getToolchain();
+					for (NarBuildArtifact artifactSettings : narSettings.getArtifactSettings()) {
+						final String configName = artifactSettings.getConfigName();
+						final String cdtArtefactType = CdtUtils.convertArtefactType(artifactSettings.getType());
+						IToolChain tc = getToolChain(toolchain, cdtArtefactType);
+						if (desc == null) {
+							desc = getCdtProject(project, tc, cdtArtefactType, monitor);
+						}
+						if (desc.getConfigurationByName(configName) == null) {
+							structureChanged = true;
+						}
+						final ICConfigurationDescription activeCfg = desc.getActiveConfiguration();
+						ICConfigurationDescription cfg = getCdtMavenConfig(project, desc, tc, cdtArtefactType, configName, setActive, monitor);
+						if (setActive && activeCfg != cfg) {
+							structureChanged = true;
+						}
+						setActive = false;
+						final PhaseTimings timings = MavenNarPlugin.getDefault().getPhaseTimings();
+						final long start = timings.start();
+						changes.addAll(synchro.fullSync(cfg, artifactSettings));
+						timings.record(Phase.SYNCHRONISE, project.getName(), start);
+					}
 				}
 			}
+			if (desc != null && (structureChanged || !changes.isEmpty())) {
+				logger.debug("configure: writing changes " + changes);
+				CdtUtils.setProjectDescription(project, desc);
+			}
+			MavenNarPlugin.getDefault().getNarExecutionCache().setSynchronised(project, narExecutions);
+			if (desc != null) {
+				NarLanguageSettingsProvider.update(project, desc, narExecutions);
+			}
+			final PhaseTimings timings = MavenNarPlugin.getDefault().getPhaseTimings();
+			final long start = timings.start();
+			MavenNarPlugin.getDefault().getCompilationDatabaseWriter().update(facade.getMavenProject(), narExecutions);
+			timings.record(Phase.COMPILATION_DATABASE, project.getName(), start);
+			final int writes = CdtUtils.getProjectDescriptionWriteCount(project) - initialWrites;
+			// Passes which find the settings up to date don't replace the count
+			if (writes > 0) {
+				lastConfigureWrites.put(project, writes);
+			}
+		} finally {
+			indexerControl.resume(project);
 		}
 
 		AbstractProjectConfigurator jConfig = LifecycleMappingFactory.createProjectConfigurator(JAVA_CONFIGURATOR_ID);
@@ -141,6 +206,16 @@ public class CProjectConfigurator extends AbstractProjectConfigurator {
 		}
 	}
 
+	/**
+	 * Returns the number of times the CDT project description was written
+	 * during the last configure pass of the project which changed its
+	 * settings, or 0 if no pass has changed them.
+	 */
+	public static int getLastConfigureWriteCount(final IProject project) {
+		final Integer writes = lastConfigureWrites.get(project);
+		return writes != null ? writes : 0;
+	}
+
 	@Override
 	public AbstractBuildParticipant getBuildParticipant(IMavenProjectFacade projectFacade, MojoExecution execution, IPluginExecutionMetadata executionMetadata) {
 		final String goal = execution.getGoal();
@@ -149,7 +224,7 @@ public class CProjectConfigurator extends AbstractProjectConfigurator {
 		} else if ("nar-download".equals(goal)) {
 			return new MojoExecutionBuildParticipant(execution, false, true);
 		} else if ("nar-unpack".equals(goal)) {
-			return new NarBuildParticipant(execution, false, true);
+			return new NarUnpackBuildParticipant(execution, false, true);
 		} else if ("nar-gnu-configure".equals(goal)) {
 			// TODO
 			return new MojoExecutionBuildParticipant(execution, false, true);
@@ -174,7 +249,7 @@ public class CProjectConfigurator extends AbstractProjectConfigurator {
 		} else if ("nar-testDownload".equals(goal)) {
 			return new MojoExecutionBuildParticipant(execution, false, true);
 		} else if (MavenUtils.isTestUnpack(goal)) {
-			return new NarBuildParticipant(execution, false, true);
+			return new NarUnpackBuildParticipant(execution, false, true);
 		} else if ("nar-testCompile".equals(goal)) {
 			// Note that this does not actually compile the tests, only unpacks
 			// test dependencies for compatibility with older versions of
@@ -189,6 +264,9 @@ public class CProjectConfigurator extends AbstractProjectConfigurator {
 	@Override
 	public void unconfigure(ProjectConfigurationRequest request, IProgressMonitor monitor) throws CoreException {
 		super.unconfigure(request, monitor);
+		MavenNarPlugin.getDefault().getNarExecutionCache().invalidate(request.getProject());
+		lastConfigureWrites.remove(request.getProject());
+		NarLanguageSettingsProvider.remove(request.getProject());
 		// removeMavenClasspathContainer(request.getProject());
 	}
 
@@ -259,11 +337,17 @@ public class CProjectConfigurator extends AbstractProjectConfigurator {
 	 */
 
 	private IToolChain getToolChain(final String toolChain, final String artefactType) throws CoreException {
+		// The extension tool chains do not change while the platform is
+		// running, so each lookup is only done once
+		final String key = toolChain + "|" + artefactType;
+		IToolChain tc = toolChains.get(key);
+		if (tc != null) {
+			return tc;
+		}
 		// Find the tool chains supported on our system for the selected
 		// artefact type
 		IToolChain[] tcs = ManagedBuildManager.getExtensionsToolChains(ManagedBuildManager.BUILD_ARTEFACT_TYPE_PROPERTY_ID, artefactType, true);
 		// Find the tool chain
-		IToolChain tc = null;
 		for (IToolChain tc2 : tcs) {
 			if (isValid(tc2) && toolChain.equals(tc2.getUniqueRealName())) {
 				tc = tc2;
@@ -273,9 +357,41 @@ public class CProjectConfigurator extends AbstractProjectConfigurator {
 		if (tc == null) {
 			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Could not find valid tool chain \"" + toolChain + "\""));
 		}
+		toolChains.put(key, tc);
 		return tc;
 	}
 
+	/**
+	 * Returns the extension configurations of the tool chain for the artefact
+	 * type, computing them only once.
+	 */
+	private ExtensionConfigs getExtensionConfigs(final IToolChain tc, final String artefactType) throws CoreException {
+		final String key = tc.getId() + "|" + artefactType;
+		ExtensionConfigs extensionConfigs = extensionConfigurations.get(key);
+		if (extensionConfigs != null) {
+			return extensionConfigs;
+		}
+		List<IConfiguration> cfgs = getCfgs(tc, artefactType);
+		if (cfgs.isEmpty()) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Cannot find any configurations"));
+		}
+		// cfgs = CfgHolder.unique(cfgs);
+		// cfgs = CfgHolder.reorder(cfgs);
+
+		IConfiguration cfgRelease = null;
+		for (IConfiguration cfg : cfgs) {
+			IBuildProperty b = cfg.getBuildProperties().getProperty(ManagedBuildManager.BUILD_TYPE_PROPERTY_ID);
+			if (b != null && b.getValue() != null && ManagedBuildManager.BUILD_TYPE_PROPERTY_RELEASE.equals(b.getValue().getId())) {
+				cfgRelease = cfg;
+				break;
+			}
+		}
+		final IConfiguration cfgFirst = cfgs.get(0);
+		extensionConfigs = new ExtensionConfigs(cfgFirst, cfgRelease != null ? cfgRelease : cfgFirst);
+		extensionConfigurations.put(key, extensionConfigs);
+		return extensionConfigs;
+	}
+
 	private ICProjectDescription getCdtProject(IProject project, IToolChain tc, String artefactType, IProgressMonitor monitor) throws CoreException {
 		try {
 			ICProjectDescriptionManager mngr = CoreModel.getDefault().getProjectDescriptionManager();
@@ -285,12 +401,7 @@ public class CProjectConfigurator extends AbstractProjectConfigurator {
 				CCorePlugin.getDefault().convertProjectToNewCC(project, ManagedBuildManager.CFG_DATA_PROVIDER_ID, monitor);
 				ICProjectDescription des = mngr.createProjectDescription(project, false, false);
 				IManagedBuildInfo info = ManagedBuildManager.createBuildInfo(project);
-				List<IConfiguration> cfgs = getCfgs(tc, artefactType);
-
-				if (cfgs.isEmpty()) {
-					throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Cannot find any configurations"));
-				}
-				IConfiguration cf = cfgs.get(0);
+				IConfiguration cf = getExtensionConfigs(tc, artefactType).first;
 				IManagedProject mProj = ManagedBuildManager.createManagedProject(project, cf.getProjectType());
 				info.setManagedProject(mProj);
 				return des;
@@ -308,41 +419,13 @@ public class CProjectConfigurator extends AbstractProjectConfigurator {
 		IManagedProject mProj = ManagedBuildManager.getBuildInfo(project).getManagedProject();
 		ICConfigurationDescription mavenCfg = des.getConfigurationByName(name);
 		if (mavenCfg == null) {
-			List<IConfiguration> cfgs = getCfgs(tc, artefactType);
-
-			if (cfgs.isEmpty()) {
-				throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Cannot find any configurations"));
-			}
-			monitor.worked(10);
-			monitor.worked(10);
-			// cfgs = CfgHolder.unique(cfgs);
-			// cfgs = CfgHolder.reorder(cfgs);
-
-			IConfiguration cfgRelease = null;
-			IConfiguration cfgFirst = null;
-
-			int work = 50 / cfgs.size();
-
-			for (IConfiguration cfg : cfgs) {
-				IBuildProperty b = cfg.getBuildProperties().getProperty(ManagedBuildManager.BUILD_TYPE_PROPERTY_ID);
-				if (cfgRelease == null && b != null && b.getValue() != null && ManagedBuildManager.BUILD_TYPE_PROPERTY_RELEASE.equals(b.getValue().getId())) {
-					cfgRelease = cfg;
-				}
-				if (cfgFirst == null) {
-					cfgFirst = cfg;
-				}
-				monitor.worked(work);
-			}
-			if (cfgFirst != null) {
-				if (cfgRelease != null) {
-					cfgFirst = cfgRelease;
-				}
-				MavenNarPlugin.getDefault().log("Creating configuration " + name);
-				IConfiguration newCfg = createConfiguration(cfgFirst, mProj, des);
-				newCfg.setName(name);
-				newCfg.setDescription("m2e generated configuration");
-				mavenCfg = ManagedBuildManager.getDescriptionForConfiguration(newCfg);
-			}
+			final IConfiguration baseCfg = getExtensionConfigs(tc, artefactType).base;
+			monitor.worked(70);
+			MavenNarPlugin.getDefault().log("Creating configuration " + name);
+			IConfiguration newCfg = createConfiguration(baseCfg, mProj, des);
+			newCfg.setName(name);
+			newCfg.setDescription("m2e generated configuration");
+			mavenCfg = ManagedBuildManager.getDescriptionForConfiguration(newCfg);
 		}
 		if (mavenCfg != null) {
 			if (setActive) {
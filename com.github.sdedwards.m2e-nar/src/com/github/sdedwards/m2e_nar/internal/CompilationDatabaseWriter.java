@@ -0,0 +1,275 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+import com.github.sdedwards.m2e_nar.internal.cdt.AbstractGnuCompilerSynchroniser;
+import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
+import com.github.sdedwards.m2e_nar.internal.model.NarCompiler;
+import com.github.sdedwards.m2e_nar.internal.model.NarExecution;
+
+/**
+ * Writes a compile_commands.json compilation database for each NAR
+ * configuration of a project, under target/m2e-nar/&lt;config name&gt;. The
+ * source directories are scanned on every update, but a database is only
+ * rewritten when the compiler arguments or the source files of its
+ * configuration have changed, and is streamed to disk one entry at a time.
+ */
+public class CompilationDatabaseWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(CompilationDatabaseWriter.class);
+
+	public static final String FILE_NAME = "compile_commands.json";
+
+	private static final String DIRECTORY = "m2e-nar";
+
+	// The compilations each database was last written from
+	private final ConcurrentMap<File, List<Compilation>> written = new ConcurrentHashMap<File, List<Compilation>>();
+
+	/**
+	 * The sources compiled by one compiler of a configuration and the
+	 * arguments they are compiled with.
+	 */
+	private static final class Compilation {
+		private final List<String> arguments;
+		private final List<File> sources;
+
+		private Compilation(final List<String> arguments, final List<File> sources) {
+			this.arguments = arguments;
+			this.sources = sources;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Compilation)) {
+				return false;
+			}
+			final Compilation other = (Compilation) obj;
+			return arguments.equals(other.arguments) && sources.equals(other.sources);
+		}
+
+		@Override
+		public int hashCode() {
+			return arguments.hashCode() ^ sources.hashCode();
+		}
+	}
+
+	/**
+	 * Writes the compilation databases of the configurations whose
+	 * compilations have changed since they were last written.
+	 */
+	public void update(final MavenProject mavenProject, final List<NarExecution> narExecutions) {
+		final File baseDirectory = new File(mavenProject.getBuild().getDirectory(), DIRECTORY);
+		for (final NarExecution narExecution : narExecutions) {
+			if (narExecution.isSkip()) {
+				continue;
+			}
+			for (final NarBuildArtifact artifactSettings : narExecution.getArtifactSettings()) {
+				final File file = new File(new File(baseDirectory, artifactSettings.getConfigName()), FILE_NAME);
+				final List<Compilation> compilations = new ArrayList<Compilation>();
+				addCompilation(compilations, artifactSettings, artifactSettings.getCSettings(), false);
+				addCompilation(compilations, artifactSettings, artifactSettings.getCppSettings(), true);
+				if (compilations.equals(written.get(file)) && file.isFile()) {
+					logger.debug("Compilation database unchanged: " + file);
+					continue;
+				}
+				try {
+					write(file, mavenProject.getBasedir(), compilations);
+					written.put(file, compilations);
+				} catch (CoreException e) {
+					// The database is an optional extra so don't fail the
+					// configuration
+					MavenNarPlugin.getDefault().logError("Could not write compilation database " + file, e);
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		written.clear();
+	}
+
+	private static void addCompilation(final List<Compilation> compilations, final NarBuildArtifact artifactSettings, final NarCompiler compiler,
+			final boolean cpp) {
+		if (compiler != null && !compiler.getIncludes().isEmpty() && !compiler.getSourceDirectories().isEmpty()) {
+			compilations.add(new Compilation(getArguments(artifactSettings, compiler, cpp), getSources(compiler)));
+		}
+	}
+
+	/**
+	 * Returns the source files of the compiler in a stable order, so that
+	 * added or deleted files change the compilation.
+	 */
+	private static List<File> getSources(final NarCompiler compiler) {
+		final List<File> sources = new ArrayList<File>();
+		final Set<String> includes = compiler.getIncludes();
+		final Set<String> excludes = compiler.getExcludes();
+		for (final File sourceDirectory : compiler.getSourceDirectories()) {
+			if (!sourceDirectory.isDirectory()) {
+				continue;
+			}
+			final DirectoryScanner scanner = new DirectoryScanner();
+			scanner.setBasedir(sourceDirectory);
+			scanner.setIncludes(includes.toArray(new String[includes.size()]));
+			scanner.setExcludes(excludes.toArray(new String[excludes.size()]));
+			scanner.scan();
+			final String[] paths = scanner.getIncludedFiles();
+			Arrays.sort(paths);
+			for (final String path : paths) {
+				sources.add(new File(sourceDirectory, path));
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * Builds the compiler arguments the same way as the GNU compiler
+	 * synchronisers set the tool options.
+	 */
+	private static List<String> getArguments(final NarBuildArtifact artifactSettings, final NarCompiler compiler, final boolean cpp) {
+		final List<String> arguments = new ArrayList<String>();
+		arguments.add(compiler.getName() != null ? compiler.getName() : (cpp ? "c++" : "cc"));
+		arguments.add("-c");
+		final boolean ignoreOptionElements = compiler.isIgnoreOptionElements();
+		arguments.add(AbstractGnuCompilerSynchroniser.getOptimizationLevel(compiler).getFlag());
+		if (!ignoreOptionElements && compiler.isDebug()) {
+			arguments.add("-g");
+		}
+		arguments.addAll(compiler.getOptions());
+		if (!ignoreOptionElements && !compiler.isExceptions()) {
+			arguments.add("-fno-exceptions");
+		}
+		arguments.addAll(AbstractGnuCompilerSynchroniser.getProfileFlags(compiler.getPerformanceProfiles()));
+		if (cpp && !ignoreOptionElements && !compiler.isRtti()) {
+			arguments.add("-fno-rtti");
+		}
+		if (AbstractGnuCompilerSynchroniser.isPIC(artifactSettings)) {
+			arguments.add("-fPIC");
+		}
+		for (final String define : compiler.getDefines()) {
+			arguments.add("-D" + define);
+		}
+		for (final String undefine : compiler.getUndefines()) {
+			arguments.add("-U" + undefine);
+		}
+		for (final String path : artifactSettings.getJavahIncludePaths()) {
+			arguments.add("-I" + path);
+		}
+		for (final String path : artifactSettings.getJavaIncludePaths()) {
+			arguments.add("-I" + path);
+		}
+		for (final File path : artifactSettings.getDependencyIncludePaths()) {
+			arguments.add("-I" + path.getPath());
+		}
+		for (final String path : compiler.getIncludePaths()) {
+			arguments.add("-I" + path);
+		}
+		for (final String path : compiler.getSystemIncludePaths()) {
+			arguments.add("-I" + path);
+		}
+		return arguments;
+	}
+
+	private static void write(final File file, final File directory, final List<Compilation> compilations) throws CoreException {
+		final File dir = file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Could not create " + dir));
+		}
+		final File tmpFile = new File(dir, FILE_NAME + ".tmp");
+		int count = 0;
+		try {
+			final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+			try {
+				writer.write('[');
+				for (final Compilation compilation : compilations) {
+					for (final File source : compilation.sources) {
+						writer.write(count == 0 ? "\n" : ",\n");
+						writeEntry(writer, directory, source, compilation.arguments);
+						++count;
+					}
+				}
+				writer.write("\n]\n");
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			tmpFile.delete();
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Could not write " + file, e));
+		}
+		if (!tmpFile.renameTo(file)) {
+			file.delete();
+			if (!tmpFile.renameTo(file)) {
+				throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Could not write " + file));
+			}
+		}
+		logger.debug("Wrote " + count + " entries to " + file);
+	}
+
+	private static void writeEntry(final Writer writer, final File directory, final File source, final List<String> arguments) throws IOException {
+		writer.write("  {\"directory\": ");
+		writeString(writer, directory.getAbsolutePath());
+		writer.write(", \"file\": ");
+		writeString(writer, source.getAbsolutePath());
+		writer.write(", \"arguments\": [");
+		for (final String argument : arguments) {
+			writeString(writer, argument);
+			writer.write(", ");
+		}
+		writeString(writer, source.getAbsolutePath());
+		writer.write("]}");
+	}
+
+	private static void writeString(final Writer writer, final String value) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); ++i) {
+			final char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				writer.write('\\');
+				writer.write(c);
+			} else if (c < 0x20) {
+				writer.write(String.format("\\u%04x", (int) c));
+			} else {
+				writer.write(c);
+			}
+		}
+		writer.write('"');
+	}
+}
@@ -25,6 +25,7 @@ import org.eclipse.m2e.core.project.IMavenProjectRegistry;
 public class ConfiguratorContext {
 	private final IMaven maven;
 	private final IMavenProjectRegistry projectManager;
+	private NarProjectGraph projectGraph = null;
 
 	public ConfiguratorContext(final IMaven maven, final IMavenProjectRegistry projectManager) {
 		this.maven = maven;
@@ -38,4 +39,11 @@ public class ConfiguratorContext {
 	public IMavenProjectRegistry getProjectManager() {
 		return projectManager;
 	}
+
+	public NarProjectGraph getProjectGraph() {
+		if (projectGraph == null) {
+			projectGraph = new NarProjectGraph(this);
+		}
+		return projectGraph;
+	}
 }
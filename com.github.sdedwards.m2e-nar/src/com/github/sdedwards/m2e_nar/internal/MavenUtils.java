@@ -20,18 +20,26 @@
 package com.github.sdedwards.m2e_nar.internal;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.PluginManagerException;
 import org.apache.maven.plugin.PluginParameterExpressionEvaluator;
+import org.apache.maven.plugin.PluginResolutionException;
 import org.apache.maven.plugin.descriptor.MojoDescriptor;
 import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugin.logging.Log;
@@ -60,11 +68,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.maven_nar.AbstractCompileMojo;
+import com.github.maven_nar.AttachedNarArtifact;
 import com.github.maven_nar.NarCompileMojo;
 import com.github.maven_nar.NarProperties;
 import com.github.maven_nar.NarTestCompileMojo;
 import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+import com.github.sdedwards.m2e_nar.internal.PhaseTimings.Phase;
+import com.github.sdedwards.m2e_nar.internal.cdt.CompilerLauncher;
+import com.github.sdedwards.m2e_nar.internal.cdt.NarLanguageSettingsProvider;
+import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
 import com.github.sdedwards.m2e_nar.internal.model.NarExecution;
+import com.github.sdedwards.m2e_nar.internal.model.PerformanceProfile;
 
 public final class MavenUtils {
 
@@ -77,25 +91,6 @@ public final class MavenUtils {
 	private static final Logger logger = LoggerFactory.getLogger(MavenUtils.class);
 	private static ClassRealm realm = null;
 
-	private static <T> T loadMojo(final IMaven maven, final MavenProject project, final MojoExecution mojoExecution, final Class<T> asType,
-			final IProgressMonitor monitor) throws CoreException {
-		return maven.createExecutionContext().execute(project, new ICallable<T>() {
-			public T call(IMavenExecutionContext context, IProgressMonitor monitor) throws CoreException {
-				return maven.getConfiguredMojo(context.getSession(), mojoExecution, asType);
-			}
-		}, monitor);
-	}
-
-	private static void releaseMojo(final IMaven maven, final MavenProject project, final Object mojo, final MojoExecution mojoExecution,
-			final IProgressMonitor monitor) throws CoreException {
-		maven.createExecutionContext().execute(project, new ICallable<Boolean>() {
-			public Boolean call(IMavenExecutionContext context, IProgressMonitor monitor) throws CoreException {
-				maven.releaseMojo(mojo, mojoExecution);
-				return true;
-			}
-		}, monitor);
-	}
-
 	private static synchronized ClassRealm getMyRealm(ClassWorld world) throws CoreException {
 		try {
 			if (realm == null) {
@@ -107,16 +102,6 @@ public final class MavenUtils {
 		}
 	}
 
-	private static <T extends AbstractMojo> T getConfiguredMojo(final IMaven maven, final MavenProject project, final MojoExecution mojoExecution,
-			final Class<T> asType, final Log log, final IProgressMonitor monitor) throws CoreException {
-		return maven.createExecutionContext().execute(project, new ICallable<T>() {
-			public T call(IMavenExecutionContext context, IProgressMonitor monitor) throws CoreException {
-				return getConfiguredMojo(context.getSession(), mojoExecution, asType, log);
-			}
-
-		}, monitor);
-	}
-
 	private static <T extends AbstractMojo> T getConfiguredMojo(MavenSession session, MojoExecution mojoExecution, Class<T> asType, Log log)
 			throws CoreException {
 		MojoDescriptor mojoDescriptor = mojoExecution.getMojoDescriptor();
@@ -189,52 +174,197 @@ public final class MavenUtils {
 
 	public static NarExecution readCompileSettings(final ConfiguratorContext context, final IMavenProjectFacade facade, final MojoExecution compileExecution,
 			final IProgressMonitor monitor) throws CoreException {
-		return readSettings(context, facade, compileExecution, NarCompileMojo.class, NarExecution.MAIN, monitor);
+		return readSettings(context, facade, compileExecution, monitor);
 	}
 
 	public static NarExecution readTestCompileSettings(final ConfiguratorContext context, final IMavenProjectFacade facade,
 			final MojoExecution compileExecution, final IProgressMonitor monitor) throws CoreException {
-		return readSettings(context, facade, compileExecution, NarTestCompileMojo.class, NarExecution.TEST, monitor);
+		return readSettings(context, facade, compileExecution, monitor);
 	}
 
-	public static <T extends AbstractCompileMojo> NarExecution readSettings(final ConfiguratorContext context, final IMavenProjectFacade facade,
-			final MojoExecution compileExecution, final Class<T> mojoType, final String buildType, final IProgressMonitor monitor) throws CoreException {
+	private static NarExecution readSettings(final ConfiguratorContext context, final IMavenProjectFacade facade, final MojoExecution compileExecution,
+			final IProgressMonitor monitor) throws CoreException {
+		if (compileExecution == null) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't find default-nar-compile execution"));
+		}
+		return readSettings(context, facade, Collections.singletonList(compileExecution), monitor).get(0);
+	}
+
+	/**
+	 * Reads the settings of the nar-compile and nar-testCompile executions of
+	 * a project within a single Maven execution context. The NAR plugin realm
+	 * is only loaded once and each execution is configured from it.
+	 * 
+	 * @return the settings of each execution, in the same order
+	 */
+	public static List<NarExecution> readSettings(final ConfiguratorContext context, final IMavenProjectFacade facade,
+			final List<MojoExecution> compileExecutions, final IProgressMonitor monitor) throws CoreException {
+		if (compileExecutions.isEmpty()) {
+			return new ArrayList<NarExecution>();
+		}
 		final IMaven maven = context.getMaven();
 		final MavenProject mavenProject = facade.getMavenProject();
-		NarExecution settings = null;
-		if (compileExecution != null) {
-			// Load plugin with Maven in order to check config
-			// and to get at aol.properties resource inside the plugin
-			AbstractMojo narMojo = loadMojo(maven, mavenProject, compileExecution, AbstractMojo.class, monitor);
-			try {
-				// ClassRealm pluginRealm =
-				// compileExecution.getMojoDescriptor().getPluginDescriptor().getClassRealm();
-				// NarClassloader classloader = new NarClassloader(pluginRealm);
-				// INarExecutionBuilder builder =
-				// classloader.createNarExecutionBuilder(mavenProject,
-				// compileMojo);
-				// settings = builder.build(NarExecution.MAIN);
-				T compileMojo = getConfiguredMojo(maven, mavenProject, compileExecution, mojoType, narMojo.getLog(), monitor);
-				compileMojo.setNarProperties(new NarProperties(mavenProject, narMojo.getClass()));
-				// Need to call validate to set up defaults
-				compileMojo.validate();
-				// Resolve the NAR artifacts, possibly from workspace
-				compileMojo.prepareNarArtifacts(context, facade, monitor);
-				NarExecutionBuilder builder = new NarExecutionBuilder(compileMojo, compileExecution);
-				settings = builder.build(buildType);
-			} catch (MojoFailureException e) {
-				throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't configure mojo"));
-			} catch (MojoExecutionException e) {
-				throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't configure mojo"));
-			} finally {
-				releaseMojo(maven, mavenProject, narMojo, compileExecution, monitor);
+		return maven.createExecutionContext().execute(mavenProject, new ICallable<List<NarExecution>>() {
+			public List<NarExecution> call(IMavenExecutionContext executionContext, IProgressMonitor monitor) throws CoreException {
+				return readSettings(context, facade, executionContext, compileExecutions, monitor);
 			}
-		} else {
-			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't find default-nar-compile execution"));
+		}, monitor);
+	}
+
+	private static List<NarExecution> readSettings(final ConfiguratorContext context, final IMavenProjectFacade facade,
+			final IMavenExecutionContext executionContext, final List<MojoExecution> compileExecutions, final IProgressMonitor monitor) throws CoreException {
+		final List<NarExecution> narExecutions = new ArrayList<NarExecution>();
+		final NarProperties narProperties = loadNarProperties(executionContext, facade, compileExecutions.get(0));
+		final Log log = new MojoLog();
+		try {
+			for (final MojoExecution compileExecution : compileExecutions) {
+				final AbstractCompileMojo compileMojo = prepareCompileMojo(context, facade, executionContext.getSession(), compileExecution, log, narProperties,
+						monitor);
+				final String buildType = NAR_TESTCOMPILE_GOAL.equals(compileExecution.getGoal()) ? NarExecution.TEST : NarExecution.MAIN;
+				narExecutions.add(buildNarExecution(facade, compileMojo, compileExecution, buildType));
+			}
+		} catch (MojoFailureException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't configure mojo"));
+		} catch (MojoExecutionException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't configure mojo"));
 		}
+		return narExecutions;
+	}
+
+	/**
+	 * Loads the realm of the NAR plugin, in order to check its configuration
+	 * and to get at the aol.properties resource inside it, and reads the NAR
+	 * properties of the project. The plugin realm is reused by Maven for the
+	 * rest of the session, and no plugin mojo is instantiated.
+	 */
+	private static NarProperties loadNarProperties(final IMavenExecutionContext executionContext, final IMavenProjectFacade facade,
+			final MojoExecution mojoExecution) throws CoreException {
+		final PhaseTimings timings = MavenNarPlugin.getDefault().getPhaseTimings();
+		final long start = timings.start();
+		final MojoDescriptor mojoDescriptor = mojoExecution.getMojoDescriptor();
+		final PluginDescriptor pluginDescriptor = mojoDescriptor.getPluginDescriptor();
+		ClassRealm pluginRealm = pluginDescriptor.getClassRealm();
+		try {
+			if (pluginRealm == null) {
+				final BuildPluginManager pluginManager = executionContext.getComponentLookup().lookup(BuildPluginManager.class);
+				pluginRealm = pluginManager.getPluginRealm(executionContext.getSession(), pluginDescriptor);
+			}
+			final NarProperties narProperties = new NarProperties(facade.getMavenProject(), pluginRealm.loadClass(mojoDescriptor.getImplementation()));
+			logger.debug("readSettings: project=" + facade.getMavenProject().getId() + ", loaded plugin in "
+					+ timings.record(Phase.LOAD_MOJO, facade.getProject().getName(), start) + "ms");
+			return narProperties;
+		} catch (PluginResolutionException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't load plugin " + pluginDescriptor.getId(), e));
+		} catch (PluginManagerException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't load plugin " + pluginDescriptor.getId(), e));
+		} catch (ClassNotFoundException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't load mojo " + mojoDescriptor.getId(), e));
+		} catch (MojoFailureException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't read NAR properties", e));
+		}
+	}
+
+	/**
+	 * Configures the compile mojo of the execution, validates it to set up
+	 * the defaults and resolves its NAR artifacts, possibly from the
+	 * workspace.
+	 */
+	private static AbstractCompileMojo prepareCompileMojo(final ConfiguratorContext context, final IMavenProjectFacade facade, final MavenSession session,
+			final MojoExecution compileExecution, final Log log, final NarProperties narProperties, final IProgressMonitor monitor) throws CoreException,
+			MojoFailureException, MojoExecutionException {
+		final PhaseTimings timings = MavenNarPlugin.getDefault().getPhaseTimings();
+		final String projectName = facade.getProject().getName();
+		long start = timings.start();
+		final Class<? extends AbstractCompileMojo> mojoType = NAR_TESTCOMPILE_GOAL.equals(compileExecution.getGoal()) ? NarTestCompileMojo.class
+				: NarCompileMojo.class;
+		final AbstractCompileMojo compileMojo = getConfiguredMojo(session, compileExecution, mojoType, log);
+		compileMojo.setNarProperties(narProperties);
+		final long configureTime = timings.record(Phase.CONFIGURE_MOJO, projectName, start);
+		start = timings.start();
+		compileMojo.validate();
+		final long validateTime = timings.record(Phase.VALIDATE, projectName, start);
+		start = timings.start();
+		compileMojo.prepareNarArtifacts(context, facade, monitor);
+		final long prepareTime = timings.record(Phase.PREPARE_ARTIFACTS, projectName, start);
+		logger.debug("prepareCompileMojo: project=" + facade.getMavenProject().getId() + ", execution=" + compileExecution.getExecutionId() + ", configure="
+				+ configureTime + "ms, validate=" + validateTime + "ms, prepareNarArtifacts=" + prepareTime + "ms");
+		return compileMojo;
+	}
+
+	private static NarExecution buildNarExecution(final IMavenProjectFacade facade, final AbstractCompileMojo compileMojo,
+			final MojoExecution compileExecution, final String buildType) throws CoreException, MojoFailureException, MojoExecutionException {
+		final PhaseTimings timings = MavenNarPlugin.getDefault().getPhaseTimings();
+		final long start = timings.start();
+		NarExecutionBuilder builder = new NarExecutionBuilder(compileMojo, compileExecution);
+		final NarExecution settings = builder.build(buildType);
+		final boolean languageSettingsProvider = NarLanguageSettingsProvider.isEnabled(facade.getMavenProject());
+		final String compilerLauncher = CompilerLauncher.getLauncher(facade.getMavenProject());
+		final Set<PerformanceProfile> performanceProfiles = getPerformanceProfiles(facade.getMavenProject());
+		for (final NarBuildArtifact artifactSettings : settings.getArtifactSettings()) {
+			artifactSettings.setLanguageSettingsProvider(languageSettingsProvider);
+			artifactSettings.setCompilerLauncher(compilerLauncher);
+			artifactSettings.setLauncherStatsLog(CompilerLauncher.getStatsLog(facade.getMavenProject(), artifactSettings.getConfigName()));
+			artifactSettings.getCSettings().getPerformanceProfiles().addAll(performanceProfiles);
+			artifactSettings.getCppSettings().getPerformanceProfiles().addAll(performanceProfiles);
+			artifactSettings.getLinkerSettings().getPerformanceProfiles().addAll(performanceProfiles);
+		}
+		final long buildTime = timings.record(Phase.BUILD_MODEL, facade.getProject().getName(), start);
+		logger.debug("readSettings: project=" + facade.getMavenProject().getId() + ", execution=" + compileExecution.getExecutionId() + ", build="
+				+ buildTime + "ms");
 		return settings;
 	}
 
+	/**
+	 * Reads the attached NAR archives the unpack goal would extract, using the
+	 * configuration of the first matching compile execution.
+	 * 
+	 * @return the archives, or null if there is no compile execution to read
+	 *         them from
+	 */
+	public static List<NarUnpacker.Archive> readAttachedNars(final ConfiguratorContext context, final IMavenProjectFacade facade, final boolean test,
+			final IProgressMonitor monitor) throws CoreException {
+		final List<MojoExecution> compileExecutions = test ? getTestCompileExecutions(context, facade, monitor) : getCompileExecutions(context, facade,
+				monitor);
+		if (compileExecutions.isEmpty()) {
+			return null;
+		}
+		final MojoExecution compileExecution = compileExecutions.get(0);
+		final IMaven maven = context.getMaven();
+		final MavenProject mavenProject = facade.getMavenProject();
+		return maven.createExecutionContext().execute(mavenProject, new ICallable<List<NarUnpacker.Archive>>() {
+			public List<NarUnpacker.Archive> call(IMavenExecutionContext executionContext, IProgressMonitor monitor) throws CoreException {
+				final NarProperties narProperties = loadNarProperties(executionContext, facade, compileExecution);
+				try {
+					final AbstractCompileMojo compileMojo = prepareCompileMojo(context, facade, executionContext.getSession(), compileExecution,
+							new MojoLog(), narProperties, monitor);
+					final List<NarUnpacker.Archive> archives = new ArrayList<NarUnpacker.Archive>();
+					for (final Map.Entry<AttachedNarArtifact, File> attached : compileMojo.getAttachedNarUnpackDirectories().entrySet()) {
+						final AttachedNarArtifact artifact = attached.getKey();
+						final Artifact resolved = maven.resolve(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), artifact.getType(),
+								artifact.getClassifier(), mavenProject.getRemoteArtifactRepositories(), monitor);
+						archives.add(new NarUnpacker.Archive(resolved.getFile(), attached.getValue()));
+					}
+					return archives;
+				} catch (MojoFailureException e) {
+					throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't configure mojo", e));
+				} catch (MojoExecutionException e) {
+					throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't configure mojo", e));
+				}
+			}
+		}, monitor);
+	}
+
+	/**
+	 * Returns the performance profiles selected by the project properties.
+	 */
+	public static Set<PerformanceProfile> getPerformanceProfiles(final MavenProject mavenProject) throws CoreException {
+		try {
+			return PerformanceProfile.parse(mavenProject.getProperties().getProperty(PerformanceProfile.PROPERTY_KEY));
+		} catch (IllegalArgumentException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, e.getMessage(), e));
+		}
+	}
+
 	public static List<MojoExecution> getCompileExecutions(final ConfiguratorContext context, final IMavenProjectFacade facade, final IProgressMonitor monitor)
 			throws CoreException {
 		return getExecutions(NAR_COMPILE_GOAL, context, facade, monitor);
@@ -264,26 +394,57 @@ public final class MavenUtils {
 		return compileExecutions;
 	}
 
+	/**
+	 * Builds the NAR model of the nar-compile and nar-testCompile executions
+	 * of a project. Models are taken from the cache where their inputs are
+	 * unchanged, and the rest are read in a single Maven execution context.
+	 */
+	public static List<NarExecution> buildNarExecutions(final ConfiguratorContext context, final IMavenProjectFacade facade, final IProgressMonitor monitor)
+			throws CoreException {
+		return buildNarExecutions(context, facade, Arrays.asList(NarExecution.MAIN, NarExecution.TEST), monitor);
+	}
+
 	public static List<NarExecution> buildCompileNarExecutions(final ConfiguratorContext context, final IMavenProjectFacade facade,
 			final IProgressMonitor monitor) throws CoreException {
-		List<NarExecution> narExecutions = new ArrayList<NarExecution>();
-		List<MojoExecution> compileExecutions = MavenUtils.getCompileExecutions(context, facade, monitor);
-		for (MojoExecution compileExecution : compileExecutions) {
-			NarExecution narSettings = MavenUtils.readCompileSettings(context, facade, compileExecution, monitor);
-			narExecutions.add(narSettings);
-		}
-		return narExecutions;
+		return buildNarExecutions(context, facade, Collections.singletonList(NarExecution.MAIN), monitor);
 	}
 
 	public static List<NarExecution> buildTestCompileNarExecutions(final ConfiguratorContext context, final IMavenProjectFacade facade,
 			final IProgressMonitor monitor) throws CoreException {
-		List<NarExecution> narExecutions = new ArrayList<NarExecution>();
-		List<MojoExecution> testCompileExecutions = MavenUtils.getTestCompileExecutions(context, facade, monitor);
-		for (MojoExecution testCompileExecution : testCompileExecutions) {
-			NarExecution narSettings = MavenUtils.readTestCompileSettings(context, facade, testCompileExecution, monitor);
-			narExecutions.add(narSettings);
+		return buildNarExecutions(context, facade, Collections.singletonList(NarExecution.TEST), monitor);
+	}
+
+	private static List<NarExecution> buildNarExecutions(final ConfiguratorContext context, final IMavenProjectFacade facade, final List<String> buildTypes,
+			final IProgressMonitor monitor) throws CoreException {
+		final NarExecutionCache cache = MavenNarPlugin.getDefault().getNarExecutionCache();
+		final Map<String, List<NarExecution>> narExecutions = new HashMap<String, List<NarExecution>>();
+		final Map<String, String> fingerprints = new HashMap<String, String>();
+		final List<MojoExecution> uncachedExecutions = new ArrayList<MojoExecution>();
+		for (final String buildType : buildTypes) {
+			final String goal = NarExecution.TEST.equals(buildType) ? NAR_TESTCOMPILE_GOAL : NAR_COMPILE_GOAL;
+			final List<MojoExecution> mojoExecutions = getExecutions(goal, context, facade, monitor);
+			final String fingerprint = cache.fingerprint(context, facade, mojoExecutions, monitor);
+			final List<NarExecution> cached = cache.get(facade.getProject(), buildType, fingerprint);
+			if (cached != null) {
+				narExecutions.put(buildType, cached);
+			} else {
+				fingerprints.put(buildType, fingerprint);
+				narExecutions.put(buildType, new ArrayList<NarExecution>());
+				uncachedExecutions.addAll(mojoExecutions);
+			}
 		}
-		return narExecutions;
+		for (final NarExecution narSettings : readSettings(context, facade, uncachedExecutions, monitor)) {
+			final String goal = narSettings.getMojoExecution().getGoal();
+			narExecutions.get(NAR_TESTCOMPILE_GOAL.equals(goal) ? NarExecution.TEST : NarExecution.MAIN).add(narSettings);
+		}
+		for (final Map.Entry<String, String> fingerprint : fingerprints.entrySet()) {
+			cache.put(facade.getProject(), fingerprint.getKey(), fingerprint.getValue(), narExecutions.get(fingerprint.getKey()));
+		}
+		final List<NarExecution> result = new ArrayList<NarExecution>();
+		for (final String buildType : buildTypes) {
+			result.addAll(narExecutions.get(buildType));
+		}
+		return result;
 	}
 
 	public static boolean isTestUnpack(String goal) {
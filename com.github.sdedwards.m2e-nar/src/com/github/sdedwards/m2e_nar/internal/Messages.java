@@ -28,6 +28,8 @@ public class Messages extends NLS {
 
 	public static String BuildPathManager_setting_paths;
 
+	public static String BuildPathManager_job_name;
+
 	public static String DownloadSourcesJob_job_download;
 
 	public static String MavenClasspathContainer_description;
@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import org.apache.maven.plugin.logging.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maven mojo log writing to the plugin's slf4j logger, for mojos configured
+ * by the connector rather than by Maven.
+ */
+public class MojoLog implements Log {
+
+	private static final Logger logger = LoggerFactory.getLogger(MojoLog.class);
+
+	public boolean isDebugEnabled() {
+		return logger.isDebugEnabled();
+	}
+
+	public void debug(CharSequence content) {
+		logger.debug(String.valueOf(content));
+	}
+
+	public void debug(CharSequence content, Throwable error) {
+		logger.debug(String.valueOf(content), error);
+	}
+
+	public void debug(Throwable error) {
+		logger.debug(error.getMessage(), error);
+	}
+
+	public boolean isInfoEnabled() {
+		return logger.isInfoEnabled();
+	}
+
+	public void info(CharSequence content) {
+		logger.info(String.valueOf(content));
+	}
+
+	public void info(CharSequence content, Throwable error) {
+		logger.info(String.valueOf(content), error);
+	}
+
+	public void info(Throwable error) {
+		logger.info(error.getMessage(), error);
+	}
+
+	public boolean isWarnEnabled() {
+		return logger.isWarnEnabled();
+	}
+
+	public void warn(CharSequence content) {
+		logger.warn(String.valueOf(content));
+	}
+
+	public void warn(CharSequence content, Throwable error) {
+		logger.warn(String.valueOf(content), error);
+	}
+
+	public void warn(Throwable error) {
+		logger.warn(error.getMessage(), error);
+	}
+
+	public boolean isErrorEnabled() {
+		return logger.isErrorEnabled();
+	}
+
+	public void error(CharSequence content) {
+		logger.error(String.valueOf(content));
+	}
+
+	public void error(CharSequence content, Throwable error) {
+		logger.error(String.valueOf(content), error);
+	}
+
+	public void error(Throwable error) {
+		logger.error(error.getMessage(), error);
+	}
+}
@@ -20,11 +20,15 @@
 package com.github.sdedwards.m2e_nar.internal;
 
 import java.io.File;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.project.MavenProject;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.m2e.core.project.configurator.MojoExecutionBuildParticipant;
@@ -35,6 +39,10 @@ public class NarBuildParticipant extends MojoExecutionBuildParticipant {
 
 	private static final Logger logger = LoggerFactory.getLogger(CProjectConfigurator.class);
 
+	// Participants are created for each build so the snapshots of the output
+	// directories, keyed by location, are kept across them here
+	private static final ConcurrentMap<String, OutputSnapshot> snapshots = new ConcurrentHashMap<String, OutputSnapshot>();
+
 	public NarBuildParticipant(MojoExecution execution, boolean runOnIncremental, boolean runOnConfiguration) {
 		super(execution, runOnIncremental, runOnConfiguration);
 	}
@@ -44,14 +52,54 @@ public class NarBuildParticipant extends MojoExecutionBuildParticipant {
 		logger.info("Build kind=" + kind + " for execution " + getMojoExecution().getExecutionId());
 		Set<IProject> retVal = null;
 		if (appliesToBuildKind(kind)) {
-			retVal = super.build(kind, monitor);
-			MavenProject project = getMavenProjectFacade().getMavenProject(monitor);
-			File generated = MavenPlugin.getMaven().getMojoParameterValue(project, getMojoExecution(), "outputDirectory", File.class, monitor);
+			File generated = getOutputDirectory(monitor);
+			// The snapshot from the previous build stands in for walking the
+			// tree before the mojo runs, files changed in between are picked
+			// up by the comparison as well
+			final OutputSnapshot before = generated != null ? snapshots.get(generated.getAbsolutePath()) : null;
+			retVal = execute(kind, monitor);
 			if (generated != null) {
-				getBuildContext().refresh(generated);
+				refresh(generated, before);
 			}
 		}
 		return retVal;
 	}
 
+	/**
+	 * Runs the goal of the participant.
+	 */
+	protected Set<IProject> execute(int kind, IProgressMonitor monitor) throws Exception {
+		return super.build(kind, monitor);
+	}
+
+	protected File getOutputDirectory(IProgressMonitor monitor) throws CoreException {
+		MavenProject project = getMavenProjectFacade().getMavenProject(monitor);
+		return MavenPlugin.getMaven().getMojoParameterValue(project, getMojoExecution(), "outputDirectory", File.class, monitor);
+	}
+
+	private void refresh(final File generated, final OutputSnapshot before) {
+		final OutputSnapshot after = OutputSnapshot.take(generated);
+		if (before == null) {
+			// Nothing is known about the workspace state of the directory
+			// so refresh all of it the first time
+			getBuildContext().refresh(generated);
+		} else {
+			final List<File> changes = after.getChanges(before);
+			logger.debug("Refreshing " + changes.size() + " changed paths in " + generated + " (" + after.getDirectoryCount() + " directories)");
+			for (final File change : changes) {
+				getBuildContext().refresh(change);
+			}
+		}
+		snapshots.put(generated.getAbsolutePath(), after);
+	}
+
+	@Override
+	public void clean(IProgressMonitor monitor) throws CoreException {
+		super.clean(monitor);
+		File generated = getOutputDirectory(monitor);
+		if (generated != null) {
+			snapshots.remove(generated.getAbsolutePath());
+		}
+	}
+
 }
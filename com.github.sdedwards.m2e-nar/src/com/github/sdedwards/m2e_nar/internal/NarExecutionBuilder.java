@@ -105,6 +105,7 @@ public class NarExecutionBuilder implements INarExecutionBuilder {
 		NarBuildArtifact settings = new NarBuildArtifact();
 
 		settings.setType(type);
+		settings.setMaxCores(narCompileMojo.getMaxCores());
 
 		List<String> projectRefs = settings.getProjectReferences();
 		List<com.github.maven_nar.NarArtifact> narArtifacts = narCompileMojo.getNarArtifacts();
@@ -0,0 +1,340 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+import com.github.sdedwards.m2e_nar.internal.cdt.CompilerLauncher;
+import com.github.sdedwards.m2e_nar.internal.cdt.NarLanguageSettingsProvider;
+import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
+import com.github.sdedwards.m2e_nar.internal.model.NarExecution;
+import com.github.sdedwards.m2e_nar.internal.model.PerformanceProfile;
+
+/**
+ * Workspace wide cache of the {@link NarExecution} models built for each
+ * project. Entries are keyed by project and build type, and are only returned
+ * while the fingerprint of the inputs they were built from is unchanged.
+ */
+public class NarExecutionCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(NarExecutionCache.class);
+
+	private static final String AOL_PROPERTIES = "aol.properties";
+	private static final String CUSTOM_AOL_PROPERTY_KEY = "nar.aolProperties";
+
+	private final ConcurrentMap<IProject, Map<String, Entry>> entries = new ConcurrentHashMap<IProject, Map<String, Entry>>();
+	// The artifact settings last written to each CDT configuration
+	private final ConcurrentMap<IProject, Map<String, NarBuildArtifact>> synchronised = new ConcurrentHashMap<IProject, Map<String, NarBuildArtifact>>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private static final class Entry {
+		private final String fingerprint;
+		private final List<NarExecution> narExecutions;
+
+		private Entry(final String fingerprint, final List<NarExecution> narExecutions) {
+			this.fingerprint = fingerprint;
+			this.narExecutions = narExecutions;
+		}
+	}
+
+	/**
+	 * Returns a copy of the cached executions for the project, or null if
+	 * there are none or they were built from different inputs. The copy may be
+	 * modified without affecting the cache.
+	 */
+	public List<NarExecution> get(final IProject project, final String buildType, final String fingerprint) {
+		final Map<String, Entry> projectEntries = entries.get(project);
+		final Entry entry = projectEntries != null ? projectEntries.get(buildType) : null;
+		if (entry != null && entry.fingerprint.equals(fingerprint)) {
+			hits.incrementAndGet();
+			logger.debug("NarExecution cache hit: project=" + project.getName() + ", buildType=" + buildType);
+			return copy(entry.narExecutions);
+		}
+		misses.incrementAndGet();
+		logger.debug("NarExecution cache miss: project=" + project.getName() + ", buildType=" + buildType);
+		return null;
+	}
+
+	public void put(final IProject project, final String buildType, final String fingerprint, final List<NarExecution> narExecutions) {
+		Map<String, Entry> projectEntries = entries.get(project);
+		if (projectEntries == null) {
+			final Map<String, Entry> newEntries = new ConcurrentHashMap<String, Entry>();
+			projectEntries = entries.putIfAbsent(project, newEntries);
+			if (projectEntries == null) {
+				projectEntries = newEntries;
+			}
+		}
+		projectEntries.put(buildType, new Entry(fingerprint, Collections.unmodifiableList(copy(narExecutions))));
+	}
+
+	/**
+	 * Removes the cached executions of the project and of every project which
+	 * references it through a NAR dependency.
+	 */
+	public void invalidate(final IProject project) {
+		final Set<IProject> invalidated = new HashSet<IProject>();
+		invalidate(project, invalidated);
+	}
+
+	private void invalidate(final IProject project, final Set<IProject> invalidated) {
+		if (!invalidated.add(project)) {
+			return;
+		}
+		if (entries.remove(project) != null) {
+			logger.debug("NarExecution cache invalidated: project=" + project.getName());
+		}
+		synchronised.remove(project);
+		for (Iterator<Map.Entry<IProject, Map<String, Entry>>> it = entries.entrySet().iterator(); it.hasNext();) {
+			final Map.Entry<IProject, Map<String, Entry>> dependent = it.next();
+			if (references(dependent.getValue(), project.getName())) {
+				invalidate(dependent.getKey(), invalidated);
+			}
+		}
+	}
+
+	/**
+	 * Returns the names of the projects referenced by the cached executions of
+	 * the project, or null if there are no cached executions.
+	 */
+	public Set<String> getProjectReferences(final IProject project) {
+		final Map<String, Entry> projectEntries = entries.get(project);
+		if (projectEntries == null) {
+			return null;
+		}
+		final Set<String> projectReferences = new HashSet<String>();
+		for (final Entry entry : projectEntries.values()) {
+			for (final NarExecution narExecution : entry.narExecutions) {
+				for (final NarBuildArtifact artifactSettings : narExecution.getArtifactSettings()) {
+					projectReferences.addAll(artifactSettings.getProjectReferences());
+				}
+			}
+		}
+		return projectReferences;
+	}
+
+	/**
+	 * Records the artifact settings which have been synchronised to the CDT
+	 * configurations of the project.
+	 */
+	public void setSynchronised(final IProject project, final List<NarExecution> narExecutions) {
+		final Map<String, NarBuildArtifact> artifacts = new ConcurrentHashMap<String, NarBuildArtifact>();
+		for (final NarExecution narExecution : narExecutions) {
+			if (!narExecution.isSkip()) {
+				for (final NarBuildArtifact artifactSettings : narExecution.getArtifactSettings()) {
+					artifacts.put(artifactSettings.getConfigName(), new NarBuildArtifact(artifactSettings));
+				}
+			}
+		}
+		synchronised.put(project, artifacts);
+	}
+
+	/**
+	 * Returns the artifact settings last synchronised to the configuration,
+	 * or null if they are not known.
+	 */
+	public NarBuildArtifact getSynchronised(final IProject project, final String configName) {
+		final Map<String, NarBuildArtifact> artifacts = synchronised.get(project);
+		return artifacts != null ? artifacts.get(configName) : null;
+	}
+
+	public void invalidateAll() {
+		entries.clear();
+		synchronised.clear();
+		logger.debug("NarExecution cache cleared");
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	private static List<NarExecution> copy(final List<NarExecution> narExecutions) {
+		final List<NarExecution> copies = new ArrayList<NarExecution>(narExecutions.size());
+		for (final NarExecution narExecution : narExecutions) {
+			copies.add(new NarExecution(narExecution));
+		}
+		return copies;
+	}
+
+	private static boolean references(final Map<String, Entry> projectEntries, final String projectName) {
+		for (final Entry entry : projectEntries.values()) {
+			for (final NarExecution narExecution : entry.narExecutions) {
+				for (final NarBuildArtifact artifactSettings : narExecution.getArtifactSettings()) {
+					if (artifactSettings.getProjectReferences().contains(projectName)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Computes a fingerprint of everything the NAR model of a project is built
+	 * from: the configuration of its executions, the resolved artifacts, the
+	 * aol.properties in use, whether the language settings provider is enabled,
+	 * the compiler launcher and the performance profiles. Workspace
+	 * projects resolved as dependencies contribute their own fingerprint.
+	 */
+	public String fingerprint(final ConfiguratorContext context, final IMavenProjectFacade facade, final List<MojoExecution> mojoExecutions,
+			final IProgressMonitor monitor) throws CoreException {
+		final List<IMavenProjectFacade> dependencies = new ArrayList<IMavenProjectFacade>();
+		final MessageDigest digest = createDigest();
+		update(digest, localFingerprint(context, facade, mojoExecutions, dependencies));
+		for (final IMavenProjectFacade dependency : dependencies) {
+			update(digest, dependency.getProject().getName());
+			update(digest, context.getProjectGraph().getFingerprint(dependency, monitor));
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Computes a fingerprint of the inputs of the project itself, adding the
+	 * workspace projects it depends on to the dependencies without
+	 * fingerprinting them.
+	 */
+	String localFingerprint(final ConfiguratorContext context, final IMavenProjectFacade facade, final List<MojoExecution> mojoExecutions,
+			final List<IMavenProjectFacade> dependencies) throws CoreException {
+		final MessageDigest digest = createDigest();
+		final MavenProject mavenProject = facade.getMavenProject();
+		update(digest, mavenProject.getId());
+		update(digest, mavenProject.getPackaging());
+		update(digest, String.valueOf(mavenProject.getBasedir()));
+		for (final MojoExecution mojoExecution : mojoExecutions) {
+			update(digest, mojoExecution.getGroupId() + ":" + mojoExecution.getArtifactId() + ":" + mojoExecution.getVersion() + ":"
+					+ mojoExecution.getGoal() + ":" + mojoExecution.getExecutionId());
+			update(digest, String.valueOf(mojoExecution.getConfiguration()));
+		}
+		for (final Artifact artifact : mavenProject.getArtifacts()) {
+			update(digest, artifact.getId() + ":" + artifact.getScope());
+			final File file = artifact.getFile();
+			if (file != null) {
+				update(digest, file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified());
+			}
+			final IMavenProjectFacade dependency = context.getProjectManager().getMavenProject(artifact.getGroupId(), artifact.getArtifactId(),
+					artifact.getBaseVersion());
+			if (dependency != null && !dependency.getProject().equals(facade.getProject())) {
+				dependencies.add(dependency);
+			}
+		}
+		update(digest, fingerprintAolProperties(mavenProject));
+		update(digest, String.valueOf(NarLanguageSettingsProvider.isEnabled(mavenProject)));
+		update(digest, String.valueOf(CompilerLauncher.getLauncher(mavenProject)));
+		update(digest, String.valueOf(mavenProject.getProperties().getProperty(PerformanceProfile.PROPERTY_KEY)));
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Computes a fingerprint of the location and content of the
+	 * aol.properties used by the project: the file named by the
+	 * nar.aolProperties property, or the one in the project base directory.
+	 */
+	static String fingerprintAolProperties(final MavenProject mavenProject) throws CoreException {
+		final MessageDigest digest = createDigest();
+		String location = mavenProject.getProperties().getProperty(CUSTOM_AOL_PROPERTY_KEY);
+		if (location == null) {
+			location = System.getProperties().getProperty(CUSTOM_AOL_PROPERTY_KEY);
+		}
+		final File file = location != null ? new File(location) : new File(mavenProject.getBasedir(), AOL_PROPERTIES);
+		update(digest, file.getAbsolutePath());
+		if (file.isFile()) {
+			InputStream in = null;
+			try {
+				in = new FileInputStream(file);
+				final byte[] buf = new byte[8192];
+				int len = in.read(buf);
+				while (len != -1) {
+					digest.update(buf, 0, len);
+					len = in.read(buf);
+				}
+			} catch (IOException e) {
+				throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Could not read " + file, e));
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+						// ignore
+					}
+				}
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	static void update(final MessageDigest digest, final String value) {
+		try {
+			digest.update(value.getBytes("UTF-8"));
+			digest.update((byte) 0);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static MessageDigest createDigest() throws CoreException {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "SHA-1 digest is not available", e));
+		}
+	}
+
+	static String toHex(final byte[] bytes) {
+		final StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
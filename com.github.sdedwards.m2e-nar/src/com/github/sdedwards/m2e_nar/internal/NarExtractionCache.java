@@ -0,0 +1,573 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+
+/**
+ * Workspace wide cache of extracted NAR archives, keyed by the SHA-1 checksum
+ * of the archive. Each archive is extracted once and the unpack directories of
+ * the consuming projects are filled with links to the cached files. The cached
+ * files are made read-only so that a tool writing to a linked file fails
+ * rather than changes the cache, and the unpacker replaces files instead of
+ * writing through them. The cache records which unpack directories reference
+ * each entry; entries which are no longer referenced are removed, least
+ * recently used first, once the cache grows beyond its maximum size.
+ */
+public class NarExtractionCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(NarExtractionCache.class);
+
+	public static final String ENABLE_PROPERTY_KEY = "m2e.nar.extractionCache";
+	// Maximum size of the cache in megabytes
+	public static final String MAX_SIZE_PROPERTY_KEY = "m2e.nar.extractionCache.maxSize";
+
+	private static final long DEFAULT_MAX_SIZE = 4096;
+	private static final long MEGABYTE = 1024 * 1024;
+
+	private static final String CONTENT = "content";
+	private static final String REFERENCES = "references";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String LOCK_SUFFIX = ".lock";
+
+	private final File root;
+	// Locks each entry against other threads and Eclipse instances, taken
+	// before the lock on the cache
+	private final NarLockManager lockManager;
+	// Checksums of the archives keyed by location, reused while the archive
+	// size and time are unchanged
+	private final ConcurrentMap<String, Checksum> checksums = new ConcurrentHashMap<String, Checksum>();
+	// The entry each unpack directory links to, loaded from the references
+	// files of the entries when first needed
+	private Map<String, String> consumers = null;
+
+	private static final class Checksum {
+		private final long length;
+		private final long lastModified;
+		private final String value;
+
+		private Checksum(final File file, final String value) {
+			this.length = file.length();
+			this.lastModified = file.lastModified();
+			this.value = value;
+		}
+
+		private boolean isValid(final File file) {
+			return length == file.length() && lastModified == file.lastModified();
+		}
+	}
+
+	public NarExtractionCache(final File root, final NarLockManager lockManager) {
+		this.root = root;
+		this.lockManager = lockManager;
+	}
+
+	public static boolean isEnabled(final MavenProject mavenProject) {
+		return Boolean.parseBoolean(mavenProject.getProperties().getProperty(ENABLE_PROPERTY_KEY));
+	}
+
+	/**
+	 * Returns the maximum size of the cache in bytes.
+	 */
+	public static long getMaxSize(final MavenProject mavenProject) {
+		final String maxSize = mavenProject.getProperties().getProperty(MAX_SIZE_PROPERTY_KEY);
+		try {
+			return (maxSize != null ? Long.parseLong(maxSize.trim()) : DEFAULT_MAX_SIZE) * MEGABYTE;
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid " + MAX_SIZE_PROPERTY_KEY + " " + maxSize);
+			return DEFAULT_MAX_SIZE * MEGABYTE;
+		}
+	}
+
+	/**
+	 * Extracts the archive into the cache if it is not already there, then
+	 * links its files into the unpack directory of the archive.
+	 * 
+	 * @param lockTimeout
+	 *            the maximum time to wait for the entry in milliseconds
+	 * @return the number of files extracted into the cache
+	 */
+	public int unpack(final NarUnpacker.Archive archive, final boolean ranlib, final long lockTimeout) throws CoreException {
+		final String key = getChecksum(archive.getFile());
+		final File entry = new File(root, key);
+		final File content = new File(entry, CONTENT);
+		int extracted = 0;
+		final NarLockManager.Lock lock = lock(key, lockTimeout);
+		if (lock == null) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Timed out waiting for the NAR cache entry of " + archive.getFile()));
+		}
+		try {
+			if (!content.isDirectory()) {
+				extracted = populate(archive.getFile(), entry, content, ranlib);
+			}
+			// The entry time orders the entries for eviction
+			entry.setLastModified(System.currentTimeMillis());
+			addReference(key, archive.getDirectory());
+			try {
+				link(content, archive.getDirectory());
+			} catch (IOException e) {
+				throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't link " + archive.getDirectory() + " to " + content, e));
+			}
+		} finally {
+			lock.release();
+		}
+		return extracted;
+	}
+
+	private int populate(final File file, final File entry, final File content, final boolean ranlib) throws CoreException {
+		final File temp = new File(root, entry.getName() + TEMP_SUFFIX);
+		delete(temp);
+		final int extracted = NarUnpacker.extract(file, temp, ranlib);
+		// Shared by every consumer through the links
+		setReadOnly(temp);
+		try {
+			NarUnpacker.mkdirs(entry);
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't create " + entry, e));
+		}
+		// Only complete extractions become visible as the content directory
+		if (!temp.renameTo(content)) {
+			delete(temp);
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't move " + temp + " to " + content));
+		}
+		logger.debug("Extracted " + file + " into the NAR cache as " + entry.getName());
+		return extracted;
+	}
+
+	/**
+	 * Fills the directory with links to the files of the content directory,
+	 * leaving files which already match and removing files which are not in
+	 * the content.
+	 */
+	private static void link(final File content, final File dir) throws IOException {
+		final boolean existed = dir.isDirectory();
+		final Set<File> entries = new HashSet<File>();
+		link(content, dir, entries);
+		if (existed) {
+			NarUnpacker.removeStale(dir, entries);
+		}
+		dir.setLastModified(System.currentTimeMillis());
+	}
+
+	private static void link(final File source, final File target, final Set<File> entries) throws IOException {
+		NarUnpacker.mkdirs(target);
+		final File[] children = source.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (final File child : children) {
+			final File targetChild = new File(target, child.getName());
+			entries.add(targetChild);
+			if (child.isDirectory()) {
+				link(child, targetChild, entries);
+			} else if (!targetChild.isFile() || targetChild.length() != child.length() || targetChild.lastModified() != child.lastModified()) {
+				if (!NarUnpacker.delete(targetChild) && targetChild.exists()) {
+					throw new IOException("Could not delete " + targetChild);
+				}
+				FileLinks.link(targetChild, child);
+			}
+		}
+	}
+
+	private synchronized void addReference(final String key, final File consumer) throws CoreException {
+		loadReferences();
+		final String previous = consumers.put(consumer.getAbsolutePath(), key);
+		if (key.equals(previous)) {
+			return;
+		}
+		if (previous != null) {
+			writeReferences(previous);
+		}
+		writeReferences(key);
+	}
+
+	/**
+	 * Forgets the unpack directories which no longer exist and removes
+	 * unreferenced entries, least recently used first, until the cache is no
+	 * larger than the maximum size.
+	 */
+	public void collectGarbage(final long maxSize) throws CoreException {
+		final File[] entries = root.listFiles();
+		if (entries == null) {
+			return;
+		}
+		final Map<File, Long> sizes = new HashMap<File, Long>();
+		final List<File> unreferenced = new ArrayList<File>();
+		long size = 0;
+		synchronized (this) {
+			loadReferences();
+			final Set<String> changed = new HashSet<String>();
+			for (final Iterator<Map.Entry<String, String>> it = consumers.entrySet().iterator(); it.hasNext();) {
+				final Map.Entry<String, String> consumer = it.next();
+				if (!new File(consumer.getKey()).isDirectory()) {
+					it.remove();
+					changed.add(consumer.getValue());
+				}
+			}
+			for (final String key : changed) {
+				writeReferences(key);
+			}
+			for (final File entry : entries) {
+				if (!entry.isDirectory() || entry.getName().endsWith(TEMP_SUFFIX)) {
+					continue;
+				}
+				final long entrySize = getSize(entry);
+				sizes.put(entry, entrySize);
+				size += entrySize;
+				if (!consumers.containsValue(entry.getName())) {
+					unreferenced.add(entry);
+				}
+			}
+		}
+		Collections.sort(unreferenced, new Comparator<File>() {
+			public int compare(final File a, final File b) {
+				final long diff = a.lastModified() - b.lastModified();
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+		for (final File entry : unreferenced) {
+			if (size <= maxSize) {
+				break;
+			}
+			// Entries being unpacked are in use, so don't wait for them
+			final NarLockManager.Lock lock = lock(entry.getName(), 0);
+			if (lock == null) {
+				continue;
+			}
+			boolean evicted = false;
+			try {
+				synchronized (this) {
+					if (consumers.containsValue(entry.getName())) {
+						continue;
+					}
+				}
+				delete(entry);
+				evicted = true;
+				size -= sizes.get(entry);
+				logger.debug("Evicted " + entry.getName() + " from the NAR cache");
+			} finally {
+				if (evicted) {
+					lock.releaseAndDelete();
+				} else {
+					lock.release();
+				}
+			}
+		}
+		if (size > maxSize) {
+			logger.info("NAR cache is " + size / MEGABYTE + "MB, above its maximum of " + maxSize / MEGABYTE + "MB, with all entries in use");
+		}
+		deleteOrphanedLocks();
+	}
+
+	/**
+	 * Deletes the lock files of entries which no longer exist, such as those
+	 * whose extraction failed.
+	 */
+	private void deleteOrphanedLocks() throws CoreException {
+		final File[] files = root.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (final File file : files) {
+			if (!file.getName().endsWith(LOCK_SUFFIX)) {
+				continue;
+			}
+			final String key = file.getName().substring(0, file.getName().length() - LOCK_SUFFIX.length());
+			if (new File(root, key).exists()) {
+				continue;
+			}
+			final NarLockManager.Lock lock = lock(key, 0);
+			if (lock == null) {
+				continue;
+			}
+			if (new File(root, key).exists()) {
+				lock.release();
+			} else {
+				lock.releaseAndDelete();
+			}
+		}
+	}
+
+	/**
+	 * Locks the entry, returning null if the timeout expires first. The lock
+	 * file of an entry is deleted with the entry, while its lock is held.
+	 */
+	private NarLockManager.Lock lock(final String key, final long timeout) throws CoreException {
+		final File lockFile = new File(root, key + LOCK_SUFFIX);
+		try {
+			return lockManager.lock(lockFile, timeout);
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Could not lock " + lockFile, e));
+		}
+	}
+
+	private void loadReferences() throws CoreException {
+		if (consumers != null) {
+			return;
+		}
+		consumers = new HashMap<String, String>();
+		final File[] entries = root.listFiles();
+		if (entries == null) {
+			return;
+		}
+		for (final File entry : entries) {
+			final File references = new File(entry, REFERENCES);
+			if (!references.isFile()) {
+				continue;
+			}
+			try {
+				final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(references), "UTF-8"));
+				try {
+					String line = reader.readLine();
+					while (line != null) {
+						if (line.length() > 0) {
+							consumers.put(line, entry.getName());
+						}
+						line = reader.readLine();
+					}
+				} finally {
+					reader.close();
+				}
+			} catch (IOException e) {
+				throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Could not read " + references, e));
+			}
+		}
+	}
+
+	private void writeReferences(final String key) throws CoreException {
+		final File entry = new File(root, key);
+		if (!entry.isDirectory()) {
+			return;
+		}
+		final File references = new File(entry, REFERENCES);
+		try {
+			final Writer writer = new OutputStreamWriter(new FileOutputStream(references), "UTF-8");
+			try {
+				for (final Map.Entry<String, String> consumer : consumers.entrySet()) {
+					if (key.equals(consumer.getValue())) {
+						writer.write(consumer.getKey());
+						writer.write('\n');
+					}
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Could not write " + references, e));
+		}
+	}
+
+	private String getChecksum(final File file) throws CoreException {
+		final Checksum checksum = checksums.get(file.getAbsolutePath());
+		if (checksum != null && checksum.isValid(file)) {
+			return checksum.value;
+		}
+		final MessageDigest digest = NarExecutionCache.createDigest();
+		try {
+			final InputStream in = new FileInputStream(file);
+			try {
+				final byte[] buf = new byte[65536];
+				int len = in.read(buf);
+				while (len != -1) {
+					digest.update(buf, 0, len);
+					len = in.read(buf);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Could not read " + file, e));
+		}
+		final String value = NarExecutionCache.toHex(digest.digest());
+		checksums.put(file.getAbsolutePath(), new Checksum(file, value));
+		return value;
+	}
+
+	private static long getSize(final File file) {
+		if (!file.isDirectory()) {
+			return file.length();
+		}
+		long size = 0;
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				size += getSize(child);
+			}
+		}
+		return size;
+	}
+
+	private static void delete(final File file) {
+		final File[] children = file.isDirectory() ? file.listFiles() : null;
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		if (!NarUnpacker.delete(file) && file.exists()) {
+			logger.warn("Could not delete " + file);
+		}
+	}
+
+	/**
+	 * Makes the files below the directory read-only. The directories are left
+	 * writable so that evicted entries can be deleted.
+	 */
+	private static void setReadOnly(final File dir) {
+		final File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (final File child : children) {
+			if (child.isDirectory()) {
+				setReadOnly(child);
+			} else if (!child.setReadOnly()) {
+				logger.debug("Could not make " + child + " read-only");
+			}
+		}
+	}
+
+	/**
+	 * Creates hard or symbolic links through java.nio.file where the runtime
+	 * provides it, and copies otherwise, as the bundle still targets Java 6.
+	 */
+	private static final class FileLinks {
+		private static final Method toPath;
+		private static final Method createLink;
+		private static final Method createSymbolicLink;
+		private static final Object noAttributes;
+
+		static {
+			Method toPathMethod = null;
+			Method createLinkMethod = null;
+			Method createSymbolicLinkMethod = null;
+			Object attributes = null;
+			try {
+				final Class<?> files = Class.forName("java.nio.file.Files");
+				final Class<?> path = Class.forName("java.nio.file.Path");
+				final Class<?> attribute = Class.forName("java.nio.file.attribute.FileAttribute");
+				attributes = Array.newInstance(attribute, 0);
+				toPathMethod = File.class.getMethod("toPath");
+				createLinkMethod = files.getMethod("createLink", path, path);
+				createSymbolicLinkMethod = files.getMethod("createSymbolicLink", path, path, attributes.getClass());
+			} catch (ClassNotFoundException e) {
+				// Java 6, copy the files instead
+			} catch (NoSuchMethodException e) {
+				// Java 6, copy the files instead
+			}
+			toPath = toPathMethod;
+			createLink = createLinkMethod;
+			createSymbolicLink = createSymbolicLinkMethod;
+			noAttributes = attributes;
+		}
+
+		private FileLinks() {
+		}
+
+		static void link(final File link, final File existing) throws IOException {
+			// Hard links look like ordinary files to the workspace, symbolic
+			// links are tried when the cache is on another file system
+			if (createLink != null && invoke(createLink, toPath(link), toPath(existing))) {
+				return;
+			}
+			if (createSymbolicLink != null && invoke(createSymbolicLink, toPath(link), toPath(existing.getAbsoluteFile()), noAttributes)) {
+				return;
+			}
+			copy(existing, link);
+		}
+
+		private static Object toPath(final File file) throws IOException {
+			try {
+				return toPath.invoke(file);
+			} catch (IllegalAccessException e) {
+				throw new IOException(e.getMessage());
+			} catch (InvocationTargetException e) {
+				throw new IOException(e.getCause().getMessage());
+			}
+		}
+
+		private static boolean invoke(final Method method, final Object... args) {
+			try {
+				method.invoke(null, args);
+				return true;
+			} catch (IllegalAccessException e) {
+				return false;
+			} catch (InvocationTargetException e) {
+				logger.debug("Could not link " + args[0] + ": " + e.getCause());
+				return false;
+			}
+		}
+
+		private static void copy(final File source, final File target) throws IOException {
+			final FileChannel in = new FileInputStream(source).getChannel();
+			try {
+				final FileChannel out = new FileOutputStream(target).getChannel();
+				try {
+					long position = 0;
+					final long size = in.size();
+					while (position < size) {
+						position += in.transferTo(position, size - position, out);
+					}
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+			target.setLastModified(source.lastModified());
+			if (source.canExecute()) {
+				target.setExecutable(true, false);
+			}
+		}
+	}
+}
@@ -0,0 +1,343 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.maven.project.MavenProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Locks guarding the extraction of NAR artifacts. Threads in this process are
+ * serialised by striped locks keyed on the lock file, and other processes by
+ * a file lock which is polled with exponential backoff until the timeout.
+ * A lock file is only deleted by the holder of its lock, which first marks it
+ * as deleted; a process which then locks the unlinked file sees the mark and
+ * locks the file at the path again. The time spent waiting and the number of
+ * contended acquisitions are recorded for a bounded number of lock files.
+ */
+public class NarLockManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(NarLockManager.class);
+
+	// Lock timeout in seconds
+	public static final String TIMEOUT_PROPERTY_KEY = "m2e.nar.lockTimeout";
+
+	public static final long DEFAULT_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+	private static final int STRIPES = 64;
+	private static final long INITIAL_BACKOFF = 10;
+	private static final long MAX_BACKOFF = 500;
+	// Maximum number of lock files with their own statistics
+	private static final int MAX_STATISTICS = 256;
+	// Written to the start of a lock file before it is deleted
+	private static final byte DELETED = 1;
+
+	private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+	private final ConcurrentMap<String, Statistics> statistics = new ConcurrentHashMap<String, Statistics>();
+	private final AtomicLong acquired = new AtomicLong();
+	private final AtomicLong contended = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong waitTime = new AtomicLong();
+
+	private static final class Statistics {
+		private final AtomicLong contended = new AtomicLong();
+		private final AtomicLong waitTime = new AtomicLong();
+	}
+
+	/**
+	 * A held lock, which must be released by the thread which acquired it.
+	 */
+	public static final class Lock {
+		private final NarLockManager manager;
+		private final File lockFile;
+		private final ReentrantLock stripe;
+		private final FileLock fileLock;
+
+		private Lock(final NarLockManager manager, final File lockFile, final ReentrantLock stripe, final FileLock fileLock) {
+			this.manager = manager;
+			this.lockFile = lockFile;
+			this.stripe = stripe;
+			this.fileLock = fileLock;
+		}
+
+		/**
+		 * Deletes the lock file and releases the lock. Processes waiting for
+		 * the file then lock a new file at the same path.
+		 */
+		public void releaseAndDelete() {
+			try {
+				final FileChannel channel = fileLock.channel();
+				channel.write(ByteBuffer.wrap(new byte[] { DELETED }), 0);
+				if (!lockFile.delete()) {
+					// Still in use on Windows, so keep it as an ordinary lock
+					// file
+					channel.truncate(0);
+					logger.debug("Could not delete " + lockFile);
+				}
+			} catch (IOException e) {
+				logger.debug("Could not delete " + lockFile, e);
+			} finally {
+				manager.statistics.remove(lockFile.getAbsolutePath());
+				release();
+			}
+		}
+
+		public void release() {
+			try {
+				// Release before closing, and keep the file so a waiting
+				// process never locks a file which has just been unlinked
+				fileLock.release();
+			} catch (IOException e) {
+				logger.debug("Could not release lock", e);
+			} finally {
+				close(fileLock.channel());
+				stripe.unlock();
+			}
+		}
+	}
+
+	public NarLockManager() {
+		for (int i = 0; i < STRIPES; ++i) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Returns the lock timeout configured for the project in milliseconds.
+	 */
+	public static long getTimeout(final MavenProject mavenProject) {
+		final String timeout = mavenProject.getProperties().getProperty(TIMEOUT_PROPERTY_KEY);
+		if (timeout != null) {
+			try {
+				return TimeUnit.SECONDS.toMillis(Long.parseLong(timeout.trim()));
+			} catch (NumberFormatException e) {
+				logger.warn("Ignoring invalid " + TIMEOUT_PROPERTY_KEY + " " + timeout);
+			}
+		}
+		return DEFAULT_TIMEOUT;
+	}
+
+	/**
+	 * Locks the lock file, waiting up to the timeout for other threads and
+	 * processes to release it.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds, 0 to try only once
+	 * @return the lock, or null if it could not be acquired within the timeout
+	 */
+	public Lock lock(final File lockFile, final long timeout) throws IOException {
+		final String key = lockFile.getAbsolutePath();
+		final long start = System.nanoTime();
+		final long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+		final ReentrantLock stripe = stripes[(key.hashCode() & Integer.MAX_VALUE) % STRIPES];
+		boolean waited = false;
+		try {
+			if (!stripe.tryLock()) {
+				waited = true;
+				if (!stripe.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+					record(key, start, timeout, waited, false);
+					return null;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for " + lockFile);
+		}
+		boolean locked = false;
+		try {
+			long backoff = INITIAL_BACKOFF;
+			while (true) {
+				final FileLock fileLock = tryLockCurrent(lockFile);
+				if (fileLock != null) {
+					locked = true;
+					record(key, start, timeout, waited, true);
+					return new Lock(this, lockFile, stripe, fileLock);
+				}
+				waited = true;
+				final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remaining <= 0) {
+					record(key, start, timeout, waited, false);
+					return null;
+				}
+				Thread.sleep(Math.min(backoff, remaining));
+				backoff = Math.min(backoff * 2, MAX_BACKOFF);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for " + lockFile);
+		} finally {
+			if (!locked) {
+				stripe.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns the file lock, or null if another process holds it.
+	 */
+	private static FileLock tryLock(final File lockFile) throws IOException {
+		final File parent = lockFile.getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Could not create " + parent);
+		}
+		final FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel();
+		FileLock fileLock = null;
+		try {
+			fileLock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// Held by a thread of this process using a different lock manager
+		} finally {
+			if (fileLock == null) {
+				close(channel);
+			}
+		}
+		return fileLock;
+	}
+
+	/**
+	 * Returns the file lock of the file at the path, or null if another
+	 * process holds it. A locked file which has been marked as deleted is
+	 * released and the file now at the path is tried instead.
+	 */
+	private static FileLock tryLockCurrent(final File lockFile) throws IOException {
+		while (true) {
+			final FileLock fileLock = tryLock(lockFile);
+			if (fileLock == null) {
+				return null;
+			}
+			boolean current = false;
+			try {
+				if (!isDeleted(fileLock)) {
+					current = true;
+				} else if (isDeleted(lockFile)) {
+					// Left marked by a holder which failed to delete it
+					fileLock.channel().truncate(0);
+					current = true;
+				}
+			} finally {
+				if (!current) {
+					fileLock.release();
+					close(fileLock.channel());
+				}
+			}
+			if (current) {
+				return fileLock;
+			}
+		}
+	}
+
+	private static boolean isDeleted(final FileLock fileLock) throws IOException {
+		final ByteBuffer mark = ByteBuffer.allocate(1);
+		return fileLock.channel().read(mark, 0) == 1 && mark.get(0) == DELETED;
+	}
+
+	/**
+	 * Returns true if the file at the path is marked as deleted.
+	 */
+	private static boolean isDeleted(final File lockFile) throws IOException {
+		final InputStream in;
+		try {
+			in = new FileInputStream(lockFile);
+		} catch (FileNotFoundException e) {
+			return false;
+		}
+		try {
+			return in.read() == DELETED;
+		} finally {
+			in.close();
+		}
+	}
+
+	private void record(final String key, final long start, final long timeout, final boolean waited, final boolean locked) {
+		final long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		if (locked) {
+			acquired.incrementAndGet();
+		} else if (timeout > 0) {
+			timeouts.incrementAndGet();
+			logger.warn("Timed out after " + waitMillis + "ms waiting for " + key);
+		}
+		if (!waited) {
+			return;
+		}
+		contended.incrementAndGet();
+		waitTime.addAndGet(waitMillis);
+		Statistics lockStatistics = statistics.get(key);
+		if (lockStatistics == null) {
+			if (statistics.size() >= MAX_STATISTICS) {
+				// Only counted in the totals
+				logger.debug("Waited " + waitMillis + "ms for " + key);
+				return;
+			}
+			final Statistics newStatistics = new Statistics();
+			lockStatistics = statistics.putIfAbsent(key, newStatistics);
+			if (lockStatistics == null) {
+				lockStatistics = newStatistics;
+			}
+		}
+		lockStatistics.contended.incrementAndGet();
+		lockStatistics.waitTime.addAndGet(waitMillis);
+		logger.debug("Waited " + waitMillis + "ms for " + key);
+	}
+
+	/**
+	 * Returns the lock counters: totals, followed by the number of contended
+	 * acquisitions and the time waited in milliseconds for each contended
+	 * lock file.
+	 */
+	public Map<String, Long> getStatistics() {
+		final Map<String, Long> counters = new TreeMap<String, Long>();
+		counters.put("narLock.acquired", acquired.get());
+		counters.put("narLock.contended", contended.get());
+		counters.put("narLock.timeouts", timeouts.get());
+		counters.put("narLock.waitMs", waitTime.get());
+		for (final Map.Entry<String, Statistics> entry : statistics.entrySet()) {
+			counters.put("narLock[" + entry.getKey() + "].contended", entry.getValue().contended.get());
+			counters.put("narLock[" + entry.getKey() + "].waitMs", entry.getValue().waitTime.get());
+		}
+		return counters;
+	}
+
+	private static void close(final FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
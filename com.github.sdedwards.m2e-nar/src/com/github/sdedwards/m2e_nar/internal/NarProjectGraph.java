@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+import com.github.sdedwards.m2e_nar.internal.model.NarExecution;
+import com.github.sdedwards.m2e_nar.internal.model.NarProjectNode;
+
+/**
+ * The workspace NAR projects reached during one configuration pass. Each
+ * project is resolved once, after the projects it depends on, and the node is
+ * reused by every dependent in the pass. The NAR models behind the nodes are
+ * shared between passes through the {@link NarExecutionCache}.
+ */
+public class NarProjectGraph {
+
+	private static final Logger logger = LoggerFactory.getLogger(NarProjectGraph.class);
+
+	private final ConfiguratorContext context;
+
+	private final Map<IProject, NarProjectNode> nodes = new HashMap<IProject, NarProjectNode>();
+	private final Set<IProject> resolving = new HashSet<IProject>();
+
+	private final Map<IProject, String> fingerprints = new HashMap<IProject, String>();
+	private final Map<IProject, String> localFingerprints = new HashMap<IProject, String>();
+	private final Map<IProject, List<IMavenProjectFacade>> dependencies = new HashMap<IProject, List<IMavenProjectFacade>>();
+
+	public NarProjectGraph(final ConfiguratorContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Returns the node of a workspace project, or null if it does not build
+	 * any NAR artifacts or depends on the project being resolved.
+	 */
+	public NarProjectNode getNode(final IMavenProjectFacade facade, final IProgressMonitor monitor) throws CoreException {
+		final IProject project = facade.getProject();
+		if (nodes.containsKey(project)) {
+			return nodes.get(project);
+		}
+		if (!resolving.add(project)) {
+			logger.debug("Dependency cycle through project " + project.getName());
+			return null;
+		}
+		try {
+			// Resolving the compile executions resolves the project's own
+			// workspace dependencies through this graph first
+			final List<NarExecution> narExecutions = MavenUtils.buildCompileNarExecutions(context, facade, monitor);
+			final NarProjectNode node = NarProjectNode.create(project.getName(), narExecutions);
+			nodes.put(project, node);
+			return node;
+		} finally {
+			resolving.remove(project);
+		}
+	}
+
+	/**
+	 * Returns the fingerprint of the compile executions of a workspace
+	 * project, computing it once per pass. It combines the local fingerprints
+	 * of every project reachable from the project, ordered by name, so it does
+	 * not depend on the order the graph is traversed in, even with cycles.
+	 */
+	public String getFingerprint(final IMavenProjectFacade facade, final IProgressMonitor monitor) throws CoreException {
+		final IProject project = facade.getProject();
+		String fingerprint = fingerprints.get(project);
+		if (fingerprint == null) {
+			final Map<String, String> reachable = new TreeMap<String, String>();
+			collectLocalFingerprints(facade, reachable, monitor);
+			final MessageDigest digest = NarExecutionCache.createDigest();
+			for (final Map.Entry<String, String> entry : reachable.entrySet()) {
+				NarExecutionCache.update(digest, entry.getKey());
+				NarExecutionCache.update(digest, entry.getValue());
+			}
+			fingerprint = NarExecutionCache.toHex(digest.digest());
+			fingerprints.put(project, fingerprint);
+		}
+		return fingerprint;
+	}
+
+	private void collectLocalFingerprints(final IMavenProjectFacade facade, final Map<String, String> reachable, final IProgressMonitor monitor)
+			throws CoreException {
+		final IProject project = facade.getProject();
+		if (reachable.containsKey(project.getName())) {
+			return;
+		}
+		String localFingerprint = localFingerprints.get(project);
+		List<IMavenProjectFacade> projectDependencies = dependencies.get(project);
+		if (localFingerprint == null) {
+			final NarExecutionCache cache = MavenNarPlugin.getDefault().getNarExecutionCache();
+			projectDependencies = new ArrayList<IMavenProjectFacade>();
+			localFingerprint = cache.localFingerprint(context, facade, MavenUtils.getCompileExecutions(context, facade, monitor), projectDependencies);
+			localFingerprints.put(project, localFingerprint);
+			dependencies.put(project, projectDependencies);
+		}
+		reachable.put(project.getName(), localFingerprint);
+		for (final IMavenProjectFacade dependency : projectDependencies) {
+			collectLocalFingerprints(dependency, reachable, monitor);
+		}
+	}
+}
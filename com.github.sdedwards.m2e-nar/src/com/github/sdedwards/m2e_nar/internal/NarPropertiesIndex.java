@@ -0,0 +1,258 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of single entries read from dependency archives, such as the
+ * nar.properties of each NAR dependency. Entries are keyed by archive path
+ * and entry name and are valid while the archive size and modification time
+ * are unchanged, so each archive is only opened the first time. The index is
+ * kept in memory and saved to the plugin state location. Entries of archives
+ * which have been deleted or replaced are dropped when the index is loaded or
+ * the archive is next looked up.
+ */
+public class NarPropertiesIndex {
+
+	private static final Logger logger = LoggerFactory.getLogger(NarPropertiesIndex.class);
+
+	private static final int FORMAT_VERSION = 1;
+	private static final long SAVE_DELAY = 1000;
+	private static final String ENTRY_SEPARATOR = "!/";
+
+	private final File indexFile;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private volatile boolean dirty = false;
+
+	private final Job saveJob = new Job("Saving NAR properties index") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			save();
+			return Status.OK_STATUS;
+		}
+	};
+
+	private static final class Entry {
+		private final long length;
+		private final long lastModified;
+		// null if the archive does not contain the entry
+		private final byte[] content;
+
+		private Entry(final long length, final long lastModified, final byte[] content) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.content = content;
+		}
+	}
+
+	/**
+	 * @param indexFile
+	 *            file the index is saved to, or null to keep it in memory only
+	 */
+	public NarPropertiesIndex(final File indexFile) {
+		this.indexFile = indexFile;
+		saveJob.setSystem(true);
+		load();
+	}
+
+	/**
+	 * Returns the content of the entry in the archive, or null if the archive
+	 * does not exist or does not contain the entry. Directories, as resolved
+	 * for workspace projects, are read directly.
+	 */
+	public byte[] get(final File archive, final String entryName) throws IOException {
+		if (archive.isDirectory()) {
+			final File file = new File(archive, entryName);
+			return file.isFile() ? readFully(new FileInputStream(file)) : null;
+		}
+		final String key = archive.getAbsolutePath() + ENTRY_SEPARATOR + entryName;
+		final long length = archive.length();
+		final long lastModified = archive.lastModified();
+		final Entry entry = entries.get(key);
+		if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+			return entry.content;
+		}
+		if (!archive.isFile()) {
+			if (entries.remove(key) != null) {
+				changed();
+			}
+			return null;
+		}
+		final byte[] content = readEntry(archive, entryName);
+		entries.put(key, new Entry(length, lastModified, content));
+		changed();
+		return content;
+	}
+
+	private void changed() {
+		dirty = true;
+		if (indexFile != null) {
+			saveJob.schedule(SAVE_DELAY);
+		}
+	}
+
+	/**
+	 * Returns true if the entry was read from the archive as it is now.
+	 */
+	private static boolean isCurrent(final String key, final Entry entry) {
+		final File archive = new File(key.substring(0, key.lastIndexOf(ENTRY_SEPARATOR)));
+		return archive.isFile() && entry.length == archive.length() && entry.lastModified == archive.lastModified();
+	}
+
+	private static byte[] readEntry(final File archive, final String entryName) throws IOException {
+		// ZipFile only reads the central directory and the requested entry
+		final ZipFile zipFile = new ZipFile(archive);
+		try {
+			final ZipEntry zipEntry = zipFile.getEntry(entryName);
+			if (zipEntry == null || zipEntry.isDirectory()) {
+				return null;
+			}
+			return readFully(zipFile.getInputStream(zipEntry));
+		} finally {
+			zipFile.close();
+		}
+	}
+
+	private static byte[] readFully(final InputStream in) throws IOException {
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buf = new byte[4096];
+			int len = in.read(buf);
+			while (len != -1) {
+				out.write(buf, 0, len);
+				len = in.read(buf);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private void load() {
+		if (indexFile == null || !indexFile.isFile()) {
+			return;
+		}
+		try {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			try {
+				if (in.readInt() != FORMAT_VERSION) {
+					return;
+				}
+				final int count = in.readInt();
+				for (int i = 0; i < count; ++i) {
+					final String key = in.readUTF();
+					final long length = in.readLong();
+					final long lastModified = in.readLong();
+					byte[] content = null;
+					if (in.readBoolean()) {
+						content = new byte[in.readInt()];
+						in.readFully(content);
+					}
+					final Entry entry = new Entry(length, lastModified, content);
+					if (isCurrent(key, entry)) {
+						entries.put(key, entry);
+					} else {
+						dirty = true;
+					}
+				}
+			} finally {
+				in.close();
+			}
+			logger.debug("Loaded " + entries.size() + " NAR properties index entries");
+		} catch (IOException e) {
+			logger.warn("Could not load NAR properties index " + indexFile, e);
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Saves the index if it has changed. The index is written to a temporary
+	 * file which then replaces the previous one.
+	 */
+	public synchronized void save() {
+		if (indexFile == null || !dirty) {
+			return;
+		}
+		dirty = false;
+		final File tmpFile = new File(indexFile.getPath() + ".tmp");
+		try {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				final Map<String, Entry> snapshot = new HashMap<String, Entry>(entries);
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(snapshot.size());
+				for (final Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+					out.writeUTF(entry.getKey());
+					out.writeLong(entry.getValue().length);
+					out.writeLong(entry.getValue().lastModified);
+					final byte[] content = entry.getValue().content;
+					out.writeBoolean(content != null);
+					if (content != null) {
+						out.writeInt(content.length);
+						out.write(content);
+					}
+				}
+			} finally {
+				out.close();
+			}
+			if (!tmpFile.renameTo(indexFile)) {
+				// Windows will not rename over an existing file
+				indexFile.delete();
+				if (!tmpFile.renameTo(indexFile)) {
+					throw new IOException("Could not rename " + tmpFile + " to " + indexFile);
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Could not save NAR properties index " + indexFile, e);
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Stops any pending save and saves the index.
+	 */
+	public void close() {
+		saveJob.cancel();
+		save();
+	}
+}
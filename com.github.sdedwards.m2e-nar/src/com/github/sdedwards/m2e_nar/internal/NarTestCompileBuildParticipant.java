@@ -24,7 +24,7 @@ import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class NarTestCompileBuildParticipant extends NarBuildParticipant {
+public class NarTestCompileBuildParticipant extends NarUnpackBuildParticipant {
 
 	private static final Logger logger = LoggerFactory.getLogger(CProjectConfigurator.class);
 
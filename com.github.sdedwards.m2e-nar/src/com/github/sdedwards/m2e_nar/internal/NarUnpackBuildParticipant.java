@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.m2e.core.MavenPlugin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+
+/**
+ * Build participant for the goals which unpack NAR dependencies. The goal is
+ * only run when the fingerprint of the resolved NAR artifacts differs from the
+ * one stored on the project by the last run, or the directories it extracted
+ * have gone. With the m2e.nar.parallelUnpack property set the archives are
+ * unpacked by {@link NarUnpacker} instead of running the goal, optionally
+ * through the shared {@link NarExtractionCache}.
+ */
+public class NarUnpackBuildParticipant extends NarBuildParticipant {
+
+	private static final Logger logger = LoggerFactory.getLogger(NarUnpackBuildParticipant.class);
+
+	private static final String NAR_TYPE = "nar";
+	private static final String NAR_EXTENSION = ".nar";
+	// Static libraries need their symbol table rebuilt once extracted
+	private static final boolean isRanlibRequired = System.getProperty("os.name").startsWith("Mac");
+
+	private static final AtomicLong runs = new AtomicLong();
+	private static final AtomicLong skips = new AtomicLong();
+
+	public NarUnpackBuildParticipant(MojoExecution execution, boolean runOnIncremental, boolean runOnConfiguration) {
+		super(execution, runOnIncremental, runOnConfiguration);
+	}
+
+	public static long getRunCount() {
+		return runs.get();
+	}
+
+	public static long getSkipCount() {
+		return skips.get();
+	}
+
+	@Override
+	public Set<IProject> build(int kind, IProgressMonitor monitor) throws Exception {
+		if (!appliesToBuildKind(kind)) {
+			return null;
+		}
+		final IProject project = getMavenProjectFacade().getProject();
+		final MavenProject mavenProject = getMavenProjectFacade().getMavenProject(monitor);
+		final List<File> unpackDirectories = getUnpackDirectories(mavenProject, monitor);
+		final QualifiedName key = new QualifiedName(MavenNarPlugin.PLUGIN_ID, "unpackFingerprint." + getMojoExecution().getExecutionId() + "."
+				+ getMojoExecution().getGoal());
+		final String fingerprint = fingerprint(mavenProject);
+		final String stored = project.getPersistentProperty(key);
+		if (stored != null && stored.equals(fingerprint + ":" + fingerprintExtracted(mavenProject, unpackDirectories))) {
+			skips.incrementAndGet();
+			logger.debug("Skipping " + getMojoExecution().getGoal() + " for " + project.getName() + ", NAR dependencies are unchanged");
+			return null;
+		}
+		runs.incrementAndGet();
+		// Remove the fingerprint first so a failed run is repeated
+		project.setPersistentProperty(key, null);
+		final Set<IProject> retVal = super.build(kind, monitor);
+		project.setPersistentProperty(key, fingerprint + ":" + fingerprintExtracted(mavenProject, unpackDirectories));
+		return retVal;
+	}
+
+	@Override
+	protected Set<IProject> execute(int kind, IProgressMonitor monitor) throws Exception {
+		final MavenProject mavenProject = getMavenProjectFacade().getMavenProject(monitor);
+		if (NarUnpacker.isEnabled(mavenProject)) {
+			final String goal = getMojoExecution().getGoal();
+			final boolean test = MavenUtils.isTestUnpack(goal) || MavenUtils.NAR_TESTCOMPILE_GOAL.equals(goal);
+			final ConfiguratorContext context = new ConfiguratorContext(MavenPlugin.getMaven(), MavenPlugin.getMavenProjectRegistry());
+			final List<NarUnpacker.Archive> archives = MavenUtils.readAttachedNars(context, getMavenProjectFacade(), test, monitor);
+			if (archives != null) {
+				if (NarExtractionCache.isEnabled(mavenProject)) {
+					final NarExtractionCache cache = MavenNarPlugin.getDefault().getNarExtractionCache();
+					NarUnpacker.unpack(archives, isRanlibRequired, cache, NarLockManager.getTimeout(mavenProject), monitor);
+					cache.collectGarbage(NarExtractionCache.getMaxSize(mavenProject));
+				} else {
+					NarUnpacker.unpack(archives, isRanlibRequired, null, 0, monitor);
+				}
+				return null;
+			}
+		}
+		return super.execute(kind, monitor);
+	}
+
+	/**
+	 * Returns the directories the goal unpacks into, applying the same
+	 * defaults as the NAR mojos.
+	 */
+	private List<File> getUnpackDirectories(final MavenProject mavenProject, final IProgressMonitor monitor) throws CoreException {
+		final List<File> unpackDirectories = new ArrayList<File>();
+		unpackDirectories.add(getDirectoryParameter(mavenProject, "unpackDirectory", "targetDirectory", "nar", monitor));
+		unpackDirectories.add(getDirectoryParameter(mavenProject, "testUnpackDirectory", "testTargetDirectory", "test-nar", monitor));
+		return unpackDirectories;
+	}
+
+	private File getDirectoryParameter(final MavenProject mavenProject, final String parameter, final String defaultParameter, final String defaultName,
+			final IProgressMonitor monitor) throws CoreException {
+		File dir = MavenPlugin.getMaven().getMojoParameterValue(mavenProject, getMojoExecution(), parameter, File.class, monitor);
+		if (dir == null) {
+			dir = MavenPlugin.getMaven().getMojoParameterValue(mavenProject, getMojoExecution(), defaultParameter, File.class, monitor);
+		}
+		return dir != null ? dir : new File(mavenProject.getBuild().getDirectory(), defaultName);
+	}
+
+	/**
+	 * Computes a fingerprint of the NAR artifacts of the project and of the
+	 * goal configuration.
+	 */
+	private String fingerprint(final MavenProject mavenProject) throws CoreException {
+		final MessageDigest digest = NarExecutionCache.createDigest();
+		final MojoExecution execution = getMojoExecution();
+		NarExecutionCache.update(digest, execution.getVersion() + ":" + execution.getGoal() + ":" + execution.getExecutionId());
+		NarExecutionCache.update(digest, String.valueOf(execution.getConfiguration()));
+		NarExecutionCache.update(digest, String.valueOf(NarUnpacker.isEnabled(mavenProject)));
+		NarExecutionCache.update(digest, String.valueOf(NarExtractionCache.isEnabled(mavenProject)));
+		NarExecutionCache.update(digest, fingerprintArtifacts(mavenProject));
+		return NarExecutionCache.toHex(digest.digest());
+	}
+
+	/**
+	 * Computes a fingerprint of the NAR artifacts of the project, including
+	 * the attached classifier NARs alongside them.
+	 */
+	static String fingerprintArtifacts(final MavenProject mavenProject) throws CoreException {
+		final MessageDigest digest = NarExecutionCache.createDigest();
+		for (final Artifact artifact : mavenProject.getArtifacts()) {
+			if (!NAR_TYPE.equals(artifact.getType())) {
+				continue;
+			}
+			NarExecutionCache.update(digest, artifact.getId() + ":" + artifact.getClassifier() + ":" + artifact.getScope());
+			final File file = artifact.getFile();
+			if (file == null) {
+				continue;
+			}
+			NarExecutionCache.update(digest, file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified());
+			final File dir = file.getParentFile();
+			final File[] attached = file.isFile() && dir != null ? dir.listFiles() : null;
+			if (attached != null) {
+				Arrays.sort(attached);
+				for (final File nar : attached) {
+					final String name = nar.getName();
+					if (name.startsWith(artifact.getArtifactId() + "-") && name.endsWith(NAR_EXTENSION)) {
+						NarExecutionCache.update(digest, name + ":" + nar.length() + ":" + nar.lastModified());
+					}
+				}
+			}
+		}
+		return NarExecutionCache.toHex(digest.digest());
+	}
+
+	/**
+	 * Computes a fingerprint of the directories extracted for the NAR
+	 * artifacts so that removing any of them runs the goal again.
+	 */
+	static String fingerprintExtracted(final MavenProject mavenProject, final List<File> unpackDirectories) throws CoreException {
+		final Set<String> prefixes = new HashSet<String>();
+		for (final Artifact artifact : mavenProject.getArtifacts()) {
+			if (NAR_TYPE.equals(artifact.getType())) {
+				prefixes.add(artifact.getArtifactId() + "-");
+			}
+		}
+		final MessageDigest digest = NarExecutionCache.createDigest();
+		for (final File unpackDirectory : unpackDirectories) {
+			final Set<String> names = new TreeSet<String>();
+			final File[] children = unpackDirectory.listFiles();
+			if (children != null) {
+				for (final File child : children) {
+					if (child.isDirectory() && hasPrefix(child.getName(), prefixes)) {
+						names.add(child.getName());
+					}
+				}
+			}
+			NarExecutionCache.update(digest, unpackDirectory.getAbsolutePath());
+			for (final String name : names) {
+				NarExecutionCache.update(digest, name);
+			}
+		}
+		return NarExecutionCache.toHex(digest.digest());
+	}
+
+	private static boolean hasPrefix(final String name, final Set<String> prefixes) {
+		for (final String prefix : prefixes) {
+			if (name.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,335 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+
+/**
+ * Unpacks attached NAR archives within the workspace build instead of running
+ * the unpack goal, enabled with the m2e.nar.parallelUnpack property. The
+ * archives are extracted concurrently into the same directories as the NAR
+ * layout uses, entries which are already present with the same size and time
+ * are left alone and files in bin directories are made executable.
+ */
+public final class NarUnpacker {
+
+	private static final Logger logger = LoggerFactory.getLogger(NarUnpacker.class);
+
+	public static final String ENABLE_PROPERTY_KEY = "m2e.nar.parallelUnpack";
+
+	private static final String NAR_EXTENSION = ".nar";
+	private static final String BIN_DIRECTORY = "bin/";
+	private static final String LIB_DIRECTORY = "lib/";
+	private static final String STATIC_LIB_EXTENSION = ".a";
+	private static final int BUFFER_SIZE = 256 * 1024;
+	// Zip entry times only have a resolution of two seconds
+	private static final long TIME_RESOLUTION = 2000;
+
+	// One copy buffer for each thread unpacking archives
+	private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	};
+
+	/**
+	 * An attached NAR archive and the directory it is unpacked below.
+	 */
+	public static final class Archive {
+		private final File file;
+		private final File unpackDirectory;
+
+		public Archive(final File file, final File unpackDirectory) {
+			this.file = file;
+			this.unpackDirectory = unpackDirectory;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Returns the directory the archive is extracted into, named after the
+		 * archive as in the NAR layout.
+		 */
+		public File getDirectory() {
+			String name = file.getName();
+			if (name.endsWith(NAR_EXTENSION)) {
+				name = name.substring(0, name.length() - NAR_EXTENSION.length());
+			}
+			return new File(unpackDirectory, name);
+		}
+	}
+
+	private NarUnpacker() {
+	}
+
+	public static boolean isEnabled(final MavenProject mavenProject) {
+		return Boolean.parseBoolean(mavenProject.getProperties().getProperty(ENABLE_PROPERTY_KEY));
+	}
+
+	/**
+	 * Unpacks the archives on a pool bounded by the number of processors.
+	 * 
+	 * @param ranlib
+	 *            true if static libraries need their symbol table rebuilt
+	 *            after extraction, as on Mac OS X
+	 * @param cache
+	 *            the shared extraction cache to link the archives from, or
+	 *            null to extract them directly
+	 * @param lockTimeout
+	 *            the maximum time to wait for a cache entry in milliseconds
+	 */
+	public static void unpack(final List<Archive> archives, final boolean ranlib, final NarExtractionCache cache, final long lockTimeout,
+			final IProgressMonitor monitor) throws CoreException {
+		if (archives.isEmpty()) {
+			return;
+		}
+		final int threads = Math.min(archives.size(), Runtime.getRuntime().availableProcessors());
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (final Archive archive : archives) {
+				results.add(executor.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						if (monitor.isCanceled()) {
+							throw new OperationCanceledException();
+						}
+						if (cache != null) {
+							return cache.unpack(archive, ranlib, lockTimeout);
+						}
+						return extract(archive.getFile(), archive.getDirectory(), ranlib);
+					}
+				}));
+			}
+			int extracted = 0;
+			for (final Future<Integer> result : results) {
+				extracted += getResult(result);
+			}
+			logger.debug("Unpacked " + archives.size() + " NAR archives on " + threads + " threads, " + extracted + " entries extracted");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static int getResult(final Future<Integer> result) throws CoreException {
+		try {
+			return result.get().intValue();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof CoreException) {
+				throw (CoreException) cause;
+			}
+			if (cause instanceof OperationCanceledException) {
+				throw (OperationCanceledException) cause;
+			}
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't unpack NAR archive", cause));
+		}
+	}
+
+	/**
+	 * Extracts the archive into the directory.
+	 * 
+	 * @return the number of files written
+	 */
+	static int extract(final File file, final File dir, final boolean ranlib) throws CoreException {
+		final boolean existed = dir.isDirectory();
+		final boolean changed = existed && file.lastModified() > dir.lastModified();
+		final Set<File> entries = new HashSet<File>();
+		final ByteBuffer buffer = buffers.get();
+		int extracted = 0;
+		try {
+			final String root = dir.getCanonicalPath() + File.separator;
+			final ZipFile zip = new ZipFile(file);
+			try {
+				for (final Enumeration<? extends ZipEntry> it = zip.entries(); it.hasMoreElements();) {
+					final ZipEntry entry = it.nextElement();
+					final File target = new File(dir, entry.getName());
+					if (!target.getCanonicalPath().startsWith(root)) {
+						throw new IOException("Entry " + entry.getName() + " is outside of " + dir);
+					}
+					for (File path = target; !path.equals(dir) && entries.add(path);) {
+						path = path.getParentFile();
+					}
+					if (entry.isDirectory()) {
+						mkdirs(target);
+						continue;
+					}
+					final boolean staticLib = ranlib && entry.getName().startsWith(LIB_DIRECTORY) && entry.getName().endsWith(STATIC_LIB_EXTENSION);
+					if (isUpToDate(target, entry, !staticLib)) {
+						continue;
+					}
+					extract(zip, entry, target, buffer);
+					++extracted;
+					if (entry.getName().startsWith(BIN_DIRECTORY)) {
+						target.setExecutable(true, false);
+					}
+					if (staticLib) {
+						runRanlib(target);
+					}
+					if (entry.getTime() >= 0) {
+						// After ranlib so that the library is seen as up to date
+						// the next time
+						target.setLastModified(entry.getTime());
+					}
+				}
+			} finally {
+				zip.close();
+			}
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't unpack " + file, e));
+		}
+		if (changed || (existed && extracted > 0)) {
+			// The archive changed so drop what it no longer contains
+			removeStale(dir, entries);
+		}
+		// The NAR layout re-extracts when the archive is newer than the directory
+		dir.setLastModified(System.currentTimeMillis());
+		return extracted;
+	}
+
+	/**
+	 * Returns true if the target has the time of the entry and, if the size is
+	 * checked, the same size. Static libraries rewritten by ranlib may change
+	 * size so only their time is compared.
+	 */
+	private static boolean isUpToDate(final File target, final ZipEntry entry, final boolean checkSize) {
+		return target.isFile() && (!checkSize || (entry.getSize() >= 0 && target.length() == entry.getSize())) && entry.getTime() >= 0
+				&& Math.abs(target.lastModified() - entry.getTime()) < TIME_RESOLUTION;
+	}
+
+	private static void extract(final ZipFile zip, final ZipEntry entry, final File target, final ByteBuffer buffer) throws IOException {
+		mkdirs(target.getParentFile());
+		// The target may be a link into the extraction cache, so unlink it
+		// rather than write through it
+		if (!delete(target) && target.exists()) {
+			throw new IOException("Could not delete " + target);
+		}
+		final InputStream in = zip.getInputStream(entry);
+		try {
+			final ReadableByteChannel src = Channels.newChannel(in);
+			final FileOutputStream out = new FileOutputStream(target);
+			try {
+				final FileChannel dst = out.getChannel();
+				buffer.clear();
+				while (src.read(buffer) != -1) {
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						dst.write(buffer);
+					}
+					buffer.clear();
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	static void mkdirs(final File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Could not create " + dir);
+		}
+	}
+
+	static void removeStale(final File dir, final Set<File> entries) {
+		final File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (final File child : children) {
+			if (child.isDirectory()) {
+				removeStale(child, entries);
+			}
+			if (!entries.contains(child) && !delete(child)) {
+				logger.warn("Could not delete " + child);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the file or empty directory. Files linked from the extraction
+	 * cache are read-only, which prevents their deletion on Windows, so the
+	 * file is made writable if the first attempt fails.
+	 */
+	static boolean delete(final File file) {
+		if (file.delete()) {
+			return true;
+		}
+		return file.exists() && file.setWritable(true) && file.delete();
+	}
+
+	private static void runRanlib(final File file) throws IOException {
+		final Process process = new ProcessBuilder("ranlib", file.getPath()).redirectErrorStream(true).start();
+		try {
+			final InputStream in = process.getInputStream();
+			try {
+				final byte[] buf = new byte[1024];
+				while (in.read(buf) != -1) {
+					// discard
+				}
+			} finally {
+				in.close();
+			}
+			final int result = process.waitFor();
+			if (result != 0) {
+				throw new IOException("Failed to execute 'ranlib " + file.getPath() + "' return code: '" + result + "'");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		}
+	}
+}
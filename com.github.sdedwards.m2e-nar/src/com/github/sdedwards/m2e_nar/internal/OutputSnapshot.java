@@ -0,0 +1,161 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Index of the files below an output directory, keyed by directory with the
+ * modification time and size of each file. Comparing the snapshots taken
+ * before and after a mojo runs gives the paths which need refreshing in the
+ * workspace.
+ */
+public final class OutputSnapshot {
+
+	private final File root;
+	// Files of each directory keyed by the path relative to the root, sorted
+	// so that a directory comes before its descendants
+	private final TreeMap<String, Map<String, FileState>> directories = new TreeMap<String, Map<String, FileState>>();
+
+	private static final class FileState {
+		private final long lastModified;
+		private final long length;
+
+		private FileState(final File file) {
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof FileState)) {
+				return false;
+			}
+			final FileState other = (FileState) obj;
+			return lastModified == other.lastModified && length == other.length;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (lastModified ^ (lastModified >>> 32)) * 31 + (int) (length ^ (length >>> 32));
+		}
+	}
+
+	private OutputSnapshot(final File root) {
+		this.root = root;
+	}
+
+	public File getRoot() {
+		return root;
+	}
+
+	public int getDirectoryCount() {
+		return directories.size();
+	}
+
+	/**
+	 * Walks the directory and records the state of every file below it.
+	 */
+	public static OutputSnapshot take(final File root) {
+		final OutputSnapshot snapshot = new OutputSnapshot(root);
+		if (root.isDirectory()) {
+			snapshot.scan(root, "");
+		}
+		return snapshot;
+	}
+
+	private void scan(final File dir, final String path) {
+		final Map<String, FileState> files = new HashMap<String, FileState>();
+		directories.put(path, files);
+		final File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (final File child : children) {
+			if (child.isDirectory()) {
+				scan(child, path.length() == 0 ? child.getName() : path + "/" + child.getName());
+			} else {
+				files.put(child.getName(), new FileState(child));
+			}
+		}
+	}
+
+	/**
+	 * Returns the files and directories which were added, modified or deleted
+	 * since the previous snapshot. An added or deleted directory is returned
+	 * instead of its contents.
+	 */
+	public List<File> getChanges(final OutputSnapshot previous) {
+		final List<File> changes = new ArrayList<File>();
+		final Set<String> addedDirs = new HashSet<String>();
+		for (final Map.Entry<String, Map<String, FileState>> dir : directories.entrySet()) {
+			final String path = dir.getKey();
+			final Map<String, FileState> previousFiles = previous.directories.get(path);
+			if (previousFiles == null) {
+				// Only the topmost added directory needs refreshing
+				if (addedDirs.add(path) && !addedDirs.contains(getParent(path))) {
+					changes.add(getFile(path, null));
+				}
+				continue;
+			}
+			for (final Map.Entry<String, FileState> file : dir.getValue().entrySet()) {
+				if (!file.getValue().equals(previousFiles.get(file.getKey()))) {
+					changes.add(getFile(path, file.getKey()));
+				}
+			}
+			for (final String name : previousFiles.keySet()) {
+				if (!dir.getValue().containsKey(name)) {
+					changes.add(getFile(path, name));
+				}
+			}
+		}
+		final Set<String> deletedDirs = new HashSet<String>();
+		for (final String path : previous.directories.keySet()) {
+			if (!directories.containsKey(path) && deletedDirs.add(path) && !deletedDirs.contains(getParent(path))) {
+				changes.add(getFile(path, null));
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Returns the path of the parent directory, or null for the root so that
+	 * an added or deleted root is itself refreshed.
+	 */
+	private static String getParent(final String path) {
+		if (path.length() == 0) {
+			return null;
+		}
+		final int index = path.lastIndexOf('/');
+		return index < 0 ? "" : path.substring(0, index);
+	}
+
+	private File getFile(final String path, final String name) {
+		final File dir = path.length() == 0 ? root : new File(root, path);
+		return name != null ? new File(dir, name) : dir;
+	}
+}
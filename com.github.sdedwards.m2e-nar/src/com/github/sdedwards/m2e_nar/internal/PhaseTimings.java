@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Times the phases of building and synchronising the NAR settings of each
+ * project, and reports the count, median, 99th percentile and total time of
+ * each phase per project and across the workspace.
+ */
+public class PhaseTimings {
+
+	public enum Phase {
+		LOAD_MOJO, CONFIGURE_MOJO, VALIDATE, PREPARE_ARTIFACTS, BUILD_MODEL, SYNCHRONISE, WRITE_DESCRIPTION, COMPILATION_DATABASE
+	}
+
+	// Number of most recent samples kept for the percentiles of each project
+	// and of the workspace. Sample arrays start small and grow as needed.
+	private static final int MAX_PROJECT_SAMPLES = 128;
+	private static final int MAX_WORKSPACE_SAMPLES = 1024;
+	private static final int INITIAL_SAMPLES = 8;
+
+	private final boolean enabled;
+
+	private final Map<String, Map<Phase, Stats>> projectStats = new TreeMap<String, Map<Phase, Stats>>();
+	private final Map<Phase, Stats> workspaceStats = new EnumMap<Phase, Stats>(Phase.class);
+
+	private static final class Stats {
+		private final int maxSamples;
+		private long count;
+		private long total;
+		private long[] samples = new long[INITIAL_SAMPLES];
+
+		private Stats(final int maxSamples) {
+			this.maxSamples = maxSamples;
+		}
+
+		private void add(final long nanos) {
+			if (count >= samples.length && samples.length < maxSamples) {
+				samples = Arrays.copyOf(samples, Math.min(samples.length * 2, maxSamples));
+			}
+			samples[(int) (count % samples.length)] = nanos;
+			++count;
+			total += nanos;
+		}
+
+		private long percentile(final int percent) {
+			final int size = (int) Math.min(count, samples.length);
+			if (size == 0) {
+				return 0;
+			}
+			final long[] sorted = Arrays.copyOf(samples, size);
+			Arrays.sort(sorted);
+			final int index = (int) Math.ceil(percent / 100.0 * size) - 1;
+			return sorted[Math.max(0, index)];
+		}
+	}
+
+	public PhaseTimings(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return the start time to pass to {@link #record}
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records the time since start against the phase of the project.
+	 * 
+	 * @return the elapsed time in milliseconds
+	 */
+	public long record(final Phase phase, final String projectName, final long start) {
+		final long elapsed = System.nanoTime() - start;
+		if (enabled) {
+			synchronized (this) {
+				Map<Phase, Stats> stats = projectStats.get(projectName);
+				if (stats == null) {
+					stats = new EnumMap<Phase, Stats>(Phase.class);
+					projectStats.put(projectName, stats);
+				}
+				getStats(stats, phase, MAX_PROJECT_SAMPLES).add(elapsed);
+				getStats(workspaceStats, phase, MAX_WORKSPACE_SAMPLES).add(elapsed);
+			}
+		}
+		return elapsed / 1000000L;
+	}
+
+	private static Stats getStats(final Map<Phase, Stats> stats, final Phase phase, final int maxSamples) {
+		Stats phaseStats = stats.get(phase);
+		if (phaseStats == null) {
+			phaseStats = new Stats(maxSamples);
+			stats.put(phase, phaseStats);
+		}
+		return phaseStats;
+	}
+
+	/**
+	 * Returns the report as JSON, with times in milliseconds.
+	 */
+	public String toJson(final Map<String, Long> counters) {
+		final StringBuilder json = new StringBuilder();
+		synchronized (this) {
+			json.append("{\n  \"workspace\": ");
+			appendStats(json, workspaceStats, "  ");
+			json.append(",\n  \"projects\": {");
+			boolean first = true;
+			for (final Map.Entry<String, Map<Phase, Stats>> project : projectStats.entrySet()) {
+				json.append(first ? "\n" : ",\n");
+				first = false;
+				json.append("    ").append(quote(project.getKey())).append(": ");
+				appendStats(json, project.getValue(), "    ");
+			}
+			json.append(first ? "}" : "\n  }");
+			json.append(",\n  \"counters\": {");
+			first = true;
+			for (final Map.Entry<String, Long> counter : counters.entrySet()) {
+				json.append(first ? "\n" : ",\n");
+				first = false;
+				json.append("    ").append(quote(counter.getKey())).append(": ").append(counter.getValue());
+			}
+			json.append(first ? "}" : "\n  }");
+			json.append("\n}\n");
+		}
+		return json.toString();
+	}
+
+	private static void appendStats(final StringBuilder json, final Map<Phase, Stats> stats, final String indent) {
+		json.append("{");
+		boolean first = true;
+		for (final Map.Entry<Phase, Stats> phase : stats.entrySet()) {
+			final Stats phaseStats = phase.getValue();
+			json.append(first ? "\n" : ",\n");
+			first = false;
+			json.append(indent).append("  ").append(quote(phase.getKey().name())).append(": {\"count\": ").append(phaseStats.count);
+			json.append(", \"p50\": ").append(toMillis(phaseStats.percentile(50)));
+			json.append(", \"p99\": ").append(toMillis(phaseStats.percentile(99)));
+			json.append(", \"total\": ").append(toMillis(phaseStats.total)).append("}");
+		}
+		json.append(first ? "}" : "\n" + indent + "}");
+	}
+
+	private static String toMillis(final long nanos) {
+		return String.valueOf(nanos / 1000L / 1000.0);
+	}
+
+	private static String quote(final String value) {
+		final StringBuilder quoted = new StringBuilder("\"");
+		for (final char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	public void writeJson(final File file, final Map<String, Long> counters) throws IOException {
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(toJson(counters));
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the mapping of filesystem locations to workspace containers used
+ * when creating settings entries. The mapping only depends on where projects
+ * and linked folders are located, so the cache is cleared whenever a project
+ * is opened, closed, moved or deleted, or a linked folder is added or
+ * removed.
+ */
+public class WorkspacePathResolver implements IResourceChangeListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(WorkspacePathResolver.class);
+
+	// Marks locations which are not inside the workspace
+	private static final IPath NOT_IN_WORKSPACE = Path.EMPTY;
+
+	private final ConcurrentMap<String, IPath> workspacePaths = new ConcurrentHashMap<String, IPath>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Returns the full workspace path of the container at the absolute
+	 * location, or null if the location is not inside the workspace.
+	 */
+	public IPath getWorkspacePath(final String location) {
+		IPath workspacePath = workspacePaths.get(location);
+		if (workspacePath != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			final IContainer container = ResourcesPlugin.getWorkspace().getRoot().getContainerForLocation(Path.fromOSString(location));
+			workspacePath = container != null ? container.getFullPath() : NOT_IN_WORKSPACE;
+			workspacePaths.put(location, workspacePath);
+		}
+		return workspacePath != NOT_IN_WORKSPACE ? workspacePath : null;
+	}
+
+	public void clear() {
+		workspacePaths.clear();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public void resourceChanged(final IResourceChangeEvent event) {
+		if (workspacePaths.isEmpty()) {
+			return;
+		}
+		switch (event.getType()) {
+		case IResourceChangeEvent.PRE_CLOSE:
+		case IResourceChangeEvent.PRE_DELETE:
+			logger.debug("Workspace paths cleared: project " + event.getResource().getName() + " closing");
+			clear();
+			break;
+		case IResourceChangeEvent.POST_CHANGE:
+			if (affectsLocations(event.getDelta())) {
+				logger.debug("Workspace paths cleared: project locations changed");
+				clear();
+			}
+			break;
+		}
+	}
+
+	private static boolean affectsLocations(final IResourceDelta rootDelta) {
+		if (rootDelta == null) {
+			return false;
+		}
+		for (final IResourceDelta projectDelta : rootDelta.getAffectedChildren()) {
+			if (projectDelta.getKind() != IResourceDelta.CHANGED
+					|| (projectDelta.getFlags() & (IResourceDelta.OPEN | IResourceDelta.MOVED_FROM | IResourceDelta.MOVED_TO | IResourceDelta.DESCRIPTION)) != 0) {
+				return true;
+			}
+			// Only top level linked folders are considered; a removed folder
+			// can no longer be asked whether it was linked
+			for (final IResourceDelta childDelta : projectDelta.getAffectedChildren(IResourceDelta.ADDED | IResourceDelta.REMOVED)) {
+				final IResource resource = childDelta.getResource();
+				if (resource.getType() == IResource.FOLDER && (childDelta.getKind() == IResourceDelta.REMOVED || resource.isLinked())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -19,7 +19,9 @@
  */
 package com.github.sdedwards.m2e_nar.internal.cdt;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.cdt.core.settings.model.ICConfigurationDescription;
 import org.eclipse.cdt.managedbuilder.core.IConfiguration;
@@ -30,6 +32,7 @@ import org.eclipse.core.runtime.CoreException;
 import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
 import com.github.sdedwards.m2e_nar.internal.model.NarCompiler;
 import com.github.sdedwards.m2e_nar.internal.model.NarCompiler.OptimizationLevel;
+import com.github.sdedwards.m2e_nar.internal.model.PerformanceProfile;
 
 @SuppressWarnings("restriction")
 public abstract class AbstractGnuCompilerSynchroniser implements SettingsSynchroniser {
@@ -38,8 +41,18 @@ public abstract class AbstractGnuCompilerSynchroniser implements SettingsSynchro
 	private static final boolean isPICMeaningful = System.getProperty("os.name").indexOf("Windows") < 0;
 	private static final String noExceptions = "-fno-exceptions";
 
-	protected enum GnuOptimizationLevel {
-		NONE, OPTIMIZE, MORE, MOST, SIZE
+	public enum GnuOptimizationLevel {
+		NONE("-O0"), OPTIMIZE("-O1"), MORE("-O2"), MOST("-O3"), SIZE("-Os");
+
+		private final String flag;
+
+		private GnuOptimizationLevel(final String flag) {
+			this.flag = flag;
+		}
+
+		public String getFlag() {
+			return flag;
+		}
 	}
 
 	protected enum GnuDebugLevel {
@@ -82,15 +95,58 @@ public abstract class AbstractGnuCompilerSynchroniser implements SettingsSynchro
 			flags.append(noExceptions);
 		}
 
+		for (String flag : getProfileFlags(compilerSettings.getPerformanceProfiles())) {
+			flags.append(" ");
+			flags.append(flag);
+		}
+
 		return flags.toString();
 	}
 
+	/**
+	 * Returns the compiler flags of the performance profiles. The linker
+	 * synchronisers add the matching linker flags.
+	 */
+	public static List<String> getProfileFlags(final Set<PerformanceProfile> profiles) {
+		final List<String> flags = new ArrayList<String>();
+		if (profiles.contains(PerformanceProfile.NATIVE)) {
+			flags.add("-march=native");
+		}
+		if (profiles.contains(PerformanceProfile.LTO)) {
+			flags.add("-flto");
+		}
+		if (profiles.contains(PerformanceProfile.SIZE_SPEED)) {
+			flags.add("-ffunction-sections");
+			flags.add("-fdata-sections");
+		}
+		if (profiles.contains(PerformanceProfile.FAST_MATH)) {
+			flags.add("-ffast-math");
+		}
+		if (profiles.contains(PerformanceProfile.NO_PLT)) {
+			flags.add("-fno-plt");
+		}
+		return flags;
+	}
+
+	/**
+	 * Returns true if the native profile raises an optimisation for speed to
+	 * -O3.
+	 */
+	public static boolean isNativeTuned(final NarCompiler compilerSettings) {
+		return compilerSettings.getPerformanceProfiles().contains(PerformanceProfile.NATIVE);
+	}
+
 	@Override
-	public void fullSync(ICConfigurationDescription cfg, NarBuildArtifact artifactSettings) throws CoreException {
+	public SettingsChangeSet fullSync(ICConfigurationDescription cfg, NarBuildArtifact artifactSettings) throws CoreException {
+		final SettingsChangeSet changes = new SettingsChangeSet();
 		BuildConfigurationData confData = (BuildConfigurationData) cfg.getConfigurationData();
 		IConfiguration managedConf = confData.getConfiguration();
+		final String command = CompilerLauncher.getCommand(getCompilerSettings(artifactSettings).getName(), artifactSettings);
 		for (final ITool tool : managedConf.getToolsBySuperClassId(getToolId())) {
-			tool.setToolCommand(getCompilerSettings(artifactSettings).getName());
+			if (command != null && !command.equals(tool.getToolCommand())) {
+				tool.setToolCommand(command);
+				changes.add(SettingsChangeSet.Kind.TOOL_COMMAND);
+			}
 		}
 		final OptionSetter optionSetter = new OptionSetter(managedConf, getToolId());
 
@@ -98,10 +154,15 @@ public abstract class AbstractGnuCompilerSynchroniser implements SettingsSynchro
 		setOptimization(optionSetter, artifactSettings);
 		setDebug(optionSetter, artifactSettings);
 		setOptions(optionSetter, artifactSettings);
+		if (optionSetter.commit()) {
+			changes.add(SettingsChangeSet.Kind.TOOL_OPTIONS);
+		}
+		return changes;
 	}
 
 	@Override
-	public void pathsOnlySync(ICConfigurationDescription cfg, NarBuildArtifact artifactSettings) throws CoreException {
+	public SettingsChangeSet pathsOnlySync(ICConfigurationDescription cfg, NarBuildArtifact artifactSettings) throws CoreException {
+		return new SettingsChangeSet();
 	}
 
 	protected void setUndefinedSymbols(final OptionSetter optionSetter, final NarBuildArtifact settings) throws CoreException {
@@ -111,11 +172,21 @@ public abstract class AbstractGnuCompilerSynchroniser implements SettingsSynchro
 		optionSetter.setOption(getUndefOptionId(), undefineArray);
 	}
 
-	protected void setOptimization(final OptionSetter optionSetter, final NarBuildArtifact settings) throws CoreException {
-		final NarCompiler compilerSettings = getCompilerSettings(settings);
+	/**
+	 * Returns true if the sources of the artifact are compiled as position
+	 * independent code.
+	 */
+	public static boolean isPIC(final NarBuildArtifact settings) {
+		return isPICMeaningful && settings.isSharedLibrary();
+	}
+
+	/**
+	 * Maps the NAR optimisation level of the compiler to the GNU one.
+	 */
+	public static GnuOptimizationLevel getOptimizationLevel(final NarCompiler compilerSettings) {
 		GnuOptimizationLevel levelGcc = GnuOptimizationLevel.NONE;
-		if (!compilerSettings.isIgnoreOptionElements()) {
-			final OptimizationLevel optLevel = compilerSettings.getOptimize();
+		final OptimizationLevel optLevel = compilerSettings.getOptimize();
+		if (!compilerSettings.isIgnoreOptionElements() && optLevel != null) {
 			switch (optLevel) {
 			case NONE:
 				levelGcc = GnuOptimizationLevel.NONE;
@@ -143,7 +214,14 @@ public abstract class AbstractGnuCompilerSynchroniser implements SettingsSynchro
 				break;
 			}
 		}
-		optionSetter.setOption(getOptLevelOptionId(), getOptLevel(levelGcc));
+		if (isNativeTuned(compilerSettings) && (levelGcc == GnuOptimizationLevel.OPTIMIZE || levelGcc == GnuOptimizationLevel.MORE)) {
+			levelGcc = GnuOptimizationLevel.MOST;
+		}
+		return levelGcc;
+	}
+
+	protected void setOptimization(final OptionSetter optionSetter, final NarBuildArtifact settings) throws CoreException {
+		optionSetter.setOption(getOptLevelOptionId(), getOptLevel(getOptimizationLevel(getCompilerSettings(settings))));
 	}
 
 	protected void setDebug(final OptionSetter optionSetter, final NarBuildArtifact settings) throws CoreException {
@@ -158,7 +236,8 @@ public abstract class AbstractGnuCompilerSynchroniser implements SettingsSynchro
 	}
 
 	protected void setOptions(final OptionSetter optionSetter, final NarBuildArtifact settings) throws CoreException {
-		// Clear all other options
+		// Other options are cleared unless set below, only the
+		// differences are written on commit
 		optionSetter.clearOptions();
 
 		// Get the flags
@@ -166,7 +245,7 @@ public abstract class AbstractGnuCompilerSynchroniser implements SettingsSynchro
 		optionSetter.setOption(getOtherFlagsOptionId(), flags.trim());
 
 		// Set fPIC option if required
-		if (isPICMeaningful && settings.isSharedLibrary()) {
+		if (isPIC(settings)) {
 			optionSetter.setOption(getFPICOptionId(), true);
 		}
 	}
@@ -21,6 +21,7 @@ package com.github.sdedwards.m2e_nar.internal.cdt;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.cdt.core.settings.model.ICConfigurationDescription;
 import org.eclipse.cdt.managedbuilder.core.IConfiguration;
@@ -31,6 +32,7 @@ import org.eclipse.core.runtime.CoreException;
 import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
 import com.github.sdedwards.m2e_nar.internal.model.NarLib;
 import com.github.sdedwards.m2e_nar.internal.model.NarLinker;
+import com.github.sdedwards.m2e_nar.internal.model.PerformanceProfile;
 
 @SuppressWarnings("restriction")
 public abstract class AbstractGnuLinkerSynchroniser implements SettingsSynchroniser {
@@ -49,6 +51,47 @@ public abstract class AbstractGnuLinkerSynchroniser implements SettingsSynchroni
 
 	public abstract String getSharedOptionId();
 
+	/**
+	 * Returns the flag to drop unused sections, or null if the linker does not
+	 * support it.
+	 */
+	public String getGcSectionsFlag() {
+		return "-Wl,--gc-sections";
+	}
+
+	/**
+	 * Returns the flag to bind all symbols at load time, or null if the linker
+	 * does not support it.
+	 */
+	public String getBindNowFlag() {
+		return "-Wl,-z,now";
+	}
+
+	/**
+	 * Returns the linker flags matching the compiler flags of the performance
+	 * profiles.
+	 */
+	public List<String> getProfileFlags(final Set<PerformanceProfile> profiles) {
+		final List<String> flags = new ArrayList<String>();
+		if (profiles.contains(PerformanceProfile.NATIVE)) {
+			// Code is generated at link time when using LTO
+			flags.add("-march=native");
+		}
+		if (profiles.contains(PerformanceProfile.LTO)) {
+			flags.add("-flto");
+		}
+		if (profiles.contains(PerformanceProfile.SIZE_SPEED) && getGcSectionsFlag() != null) {
+			flags.add(getGcSectionsFlag());
+		}
+		if (profiles.contains(PerformanceProfile.FAST_MATH)) {
+			flags.add("-ffast-math");
+		}
+		if (profiles.contains(PerformanceProfile.NO_PLT) && getBindNowFlag() != null) {
+			flags.add(getBindNowFlag());
+		}
+		return flags;
+	}
+
 	public String getFlags(final NarLinker linkerSettings, final List<NarLib> libs) {
 		final StringBuilder flags = new StringBuilder();
 
@@ -65,6 +108,10 @@ public abstract class AbstractGnuLinkerSynchroniser implements SettingsSynchroni
 			flags.append(" ");
 			flags.append(option);
 		}
+		for (String flag : getProfileFlags(linkerSettings.getPerformanceProfiles())) {
+			flags.append(" ");
+			flags.append(flag);
+		}
 		boolean first = true;
 		for (NarLib lib : libs) {
 			if (!NarBuildArtifact.isSharedLibrary(lib.getType())) {
@@ -82,25 +129,37 @@ public abstract class AbstractGnuLinkerSynchroniser implements SettingsSynchroni
 	}
 
 	@Override
-	public void fullSync(ICConfigurationDescription cfg, NarBuildArtifact artifactSettings) throws CoreException {
+	public SettingsChangeSet fullSync(ICConfigurationDescription cfg, NarBuildArtifact artifactSettings) throws CoreException {
+		final SettingsChangeSet changes = new SettingsChangeSet();
 		final BuildConfigurationData confData = (BuildConfigurationData) cfg.getConfigurationData();
 		final IConfiguration managedConf = confData.getConfiguration();
+		final String command = artifactSettings.getLinkerSettings().getName();
 		for (final ITool tool : managedConf.getToolsBySuperClassId(getToolId())) {
-			tool.setToolCommand(artifactSettings.getLinkerSettings().getName());
+			if (command != null && !command.equals(tool.getToolCommand())) {
+				tool.setToolCommand(command);
+				changes.add(SettingsChangeSet.Kind.TOOL_COMMAND);
+			}
 		}
+		return changes;
 	}
 
 	@Override
-	public void pathsOnlySync(ICConfigurationDescription cfg, NarBuildArtifact artifactSettings) throws CoreException {
+	public SettingsChangeSet pathsOnlySync(ICConfigurationDescription cfg, NarBuildArtifact artifactSettings) throws CoreException {
+		final SettingsChangeSet changes = new SettingsChangeSet();
 		final BuildConfigurationData confData = (BuildConfigurationData) cfg.getConfigurationData();
 		final IConfiguration managedConf = confData.getConfiguration();
 		final OptionSetter optionSetter = new OptionSetter(managedConf, getToolId());
 		setOptions(optionSetter, artifactSettings);
+		if (optionSetter.commit()) {
+			changes.add(SettingsChangeSet.Kind.TOOL_OPTIONS);
+		}
+		return changes;
 	}
 
 	protected void setOptions(final OptionSetter optionSetter, final NarBuildArtifact settings) throws CoreException {
 
-		// Clear all other options
+		// Other options are cleared unless set below, only the
+		// differences are written on commit
 		optionSetter.clearOptions();
 
 		List<NarLib> libs = new ArrayList<NarLib>();
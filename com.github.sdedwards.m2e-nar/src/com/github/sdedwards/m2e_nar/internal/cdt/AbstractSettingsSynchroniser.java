@@ -23,11 +23,13 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.cdt.core.settings.model.ICConfigurationDescription;
+import org.eclipse.cdt.core.settings.model.ICExclusionPatternPathEntry;
 import org.eclipse.cdt.core.settings.model.ICIncludePathEntry;
 import org.eclipse.cdt.core.settings.model.ICLanguageSetting;
 import org.eclipse.cdt.core.settings.model.ICLanguageSettingEntry;
@@ -37,26 +39,27 @@ import org.eclipse.cdt.core.settings.model.ICMacroEntry;
 import org.eclipse.cdt.core.settings.model.ICSettingEntry;
 import org.eclipse.cdt.core.settings.model.ICSourceEntry;
 import org.eclipse.cdt.core.settings.model.util.CDataUtil;
+import org.eclipse.cdt.managedbuilder.core.IBuilder;
 import org.eclipse.cdt.managedbuilder.core.IConfiguration;
+import org.eclipse.cdt.managedbuilder.internal.core.Builder;
 import org.eclipse.cdt.managedbuilder.internal.dataprovider.BuildConfigurationData;
-import org.eclipse.core.resources.IContainer;
-import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.sdedwards.m2e_nar.MavenNarPlugin;
 import com.github.sdedwards.m2e_nar.internal.BuildPathManager;
 import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
+import com.github.sdedwards.m2e_nar.internal.model.NarCompiler;
 import com.github.sdedwards.m2e_nar.internal.model.NarLib;
 import com.github.sdedwards.m2e_nar.internal.model.NarSysLib;
 
 @SuppressWarnings("restriction")
 public abstract class AbstractSettingsSynchroniser implements SettingsSynchroniser {
 
-	protected final Logger logger = LoggerFactory.getLogger(getClass());
+	private static final Logger logger = LoggerFactory.getLogger(AbstractSettingsSynchroniser.class);
 
 	protected static final String cppLanguageId = "org.eclipse.cdt.core.g++";
 	protected static final String cLanguageId = "org.eclipse.cdt.core.gcc";
@@ -73,128 +76,174 @@ public abstract class AbstractSettingsSynchroniser implements SettingsSynchronis
 	}
 
 	@Override
-	public void fullSync(final ICConfigurationDescription cfg, final NarBuildArtifact artifactSettings) throws CoreException {
+	public SettingsChangeSet fullSync(final ICConfigurationDescription cfg, final NarBuildArtifact artifactSettings) throws CoreException {
 		logger.info("Full sync to configuration " + cfg.getName());
-		pathsOnlySync(cfg, artifactSettings);
+		final SettingsChangeSet changes = pathsOnlySync(cfg, artifactSettings);
 		// General settings
-		setArtifactName(cfg, artifactSettings);
-		setSourceDirs(cfg, artifactSettings);
-		setDefinedSymbols(cfg, artifactSettings);
+		setArtifactName(cfg, artifactSettings, changes);
+		setParallelBuild(cfg, artifactSettings, changes);
+		if (CompilerLauncher.setStatsLog(cfg, artifactSettings)) {
+			changes.add(SettingsChangeSet.Kind.ENVIRONMENT);
+		}
+		setSourceDirs(cfg, artifactSettings, changes);
+		setDefinedSymbols(cfg, artifactSettings, changes);
 		// Tool-specific settings
 		for (SettingsSynchroniser toolSpecificSynchroniser : toolSpecifics) {
-			toolSpecificSynchroniser.fullSync(cfg, artifactSettings);
+			changes.addAll(toolSpecificSynchroniser.fullSync(cfg, artifactSettings));
 		}
+		logger.debug("Full sync changes to configuration " + cfg.getName() + ": " + changes);
+		return changes;
 	}
 
-	private void setArtifactName(ICConfigurationDescription cfg, NarBuildArtifact artifactSettings) {
+	private void setArtifactName(ICConfigurationDescription cfg, NarBuildArtifact artifactSettings, final SettingsChangeSet changes) {
 		final String artifactName = artifactSettings.getArtifactName();
 		if (artifactName != null) {
 			BuildConfigurationData confData = (BuildConfigurationData) cfg.getConfigurationData();
 			IConfiguration managedConf = confData.getConfiguration();
-			managedConf.setArtifactName(artifactName);
+			if (!artifactName.equals(managedConf.getArtifactName())) {
+				managedConf.setArtifactName(artifactName);
+				changes.add(SettingsChangeSet.Kind.ARTIFACT_NAME);
+			}
+		}
+	}
+
+	private void setParallelBuild(final ICConfigurationDescription cfg, final NarBuildArtifact artifactSettings, final SettingsChangeSet changes)
+			throws CoreException {
+		BuildConfigurationData confData = (BuildConfigurationData) cfg.getConfigurationData();
+		IConfiguration managedConf = confData.getConfiguration();
+		final IBuilder builder = managedConf.getEditableBuilder();
+		if (builder == null || !builder.supportsParallelBuild()) {
+			return;
+		}
+		if (setParallelBuild(builder, ((Builder) builder).getParallelizationNumAttribute(), artifactSettings.getMaxCores())) {
+			changes.add(SettingsChangeSet.Kind.PARALLEL_BUILD);
+		}
+	}
+
+	/**
+	 * Sets the parallel build of the builder from the NAR maxCores, returning
+	 * whether it changed. As in NAR, 0 means use all the available cores,
+	 * which is kept as CDT's optimal number of jobs rather than the core
+	 * count of this machine so the stored configuration is the same on every
+	 * machine. The stored number of jobs is negative for the optimal number.
+	 */
+	static boolean setParallelBuild(final IBuilder builder, final int storedJobs, final int maxCores) throws CoreException {
+		final boolean parallel = maxCores != 1;
+		if (builder.isParallelBuildOn() == parallel && (!parallel || (maxCores > 0 ? storedJobs == maxCores : storedJobs <= 0))) {
+			return false;
+		}
+		builder.setParallelBuildOn(parallel);
+		if (parallel) {
+			// CDT sets its optimal number of jobs for 0 or less
+			builder.setParallelizationNum(maxCores > 0 ? maxCores : 0);
 		}
+		return true;
 	}
 
 	@Override
-	public void pathsOnlySync(final ICConfigurationDescription cfg, final NarBuildArtifact artifactSettings) throws CoreException {
+	public SettingsChangeSet pathsOnlySync(final ICConfigurationDescription cfg, final NarBuildArtifact artifactSettings) throws CoreException {
 		logger.info("Paths sync to configuration " + cfg.getName());
-		setProjectRefs(cfg, artifactSettings);
-		setIncludes(cfg, artifactSettings);
-		setLibraryPaths(cfg, artifactSettings);
-		setLibraries(cfg, artifactSettings);
+		final SettingsChangeSet changes = new SettingsChangeSet();
+		setProjectRefs(cfg, artifactSettings, changes);
+		if (NarLanguageSettingsProvider.setProviderEnabled(cfg, artifactSettings.isLanguageSettingsProvider())) {
+			changes.add(SettingsChangeSet.Kind.LANGUAGE_SETTINGS_PROVIDERS);
+		}
+		setIncludes(cfg, artifactSettings, changes);
+		setLibraryPaths(cfg, artifactSettings, changes);
+		setLibraries(cfg, artifactSettings, changes);
 		// Tool-specific settings
 		for (SettingsSynchroniser toolSpecificSynchroniser : toolSpecifics) {
-			toolSpecificSynchroniser.pathsOnlySync(cfg, artifactSettings);
+			changes.addAll(toolSpecificSynchroniser.pathsOnlySync(cfg, artifactSettings));
 		}
+		return changes;
 	}
 
 	public abstract String getToolchain();
 
-	private void setProjectRefs(final ICConfigurationDescription conf, final NarBuildArtifact settings) throws CoreException {
+	private void setProjectRefs(final ICConfigurationDescription conf, final NarBuildArtifact settings, final SettingsChangeSet changes)
+			throws CoreException {
 		Map<String, String> refs = new HashMap<String, String>();
 		for (String projectName : settings.getProjectReferences()) {
 			// empty string means reference the active config
 			refs.put(projectName, "");
 		}
-		conf.setReferenceInfo(refs);
+		if (!refs.equals(conf.getReferenceInfo())) {
+			conf.setReferenceInfo(refs);
+			changes.add(SettingsChangeSet.Kind.PROJECT_REFERENCES);
+		}
 	}
 
-	private void setIncludes(final ICConfigurationDescription conf, final NarBuildArtifact settings) throws CoreException {
+	private void setIncludes(final ICConfigurationDescription conf, final NarBuildArtifact settings, final SettingsChangeSet changes) throws CoreException {
 		final ICLanguageSetting[] languageSettings = conf.getRootFolderDescription().getLanguageSettings();
-
-		final List<ICIncludePathEntry> cIncludePathEntries = new ArrayList<ICIncludePathEntry>();
-		for (final String path : settings.getCSettings().getIncludePaths()) {
-			ICIncludePathEntry includePath = createIncludePathEntry(path, ICSettingEntry.LOCAL);
-			cIncludePathEntries.add(includePath);
-		}
-		for (final String path : settings.getCSettings().getSystemIncludePaths()) {
-			ICIncludePathEntry includePath = createIncludePathEntry(path, 0);
-			cIncludePathEntries.add(includePath);
-		}
-		final List<ICIncludePathEntry> cppIncludePathEntries = new ArrayList<ICIncludePathEntry>();
-		for (final String path : settings.getCppSettings().getIncludePaths()) {
-			ICIncludePathEntry includePath = createIncludePathEntry(path, ICSettingEntry.LOCAL);
-			cppIncludePathEntries.add(includePath);
-		}
-		for (final String path : settings.getCppSettings().getSystemIncludePaths()) {
-			ICIncludePathEntry includePath = createIncludePathEntry(path, 0);
-			cppIncludePathEntries.add(includePath);
+		for (ICLanguageSetting setting : languageSettings) {
+			// Entries served by the language settings provider are not stored
+			final List<ICLanguageSettingEntry> l = settings.isLanguageSettingsProvider() ? new ArrayList<ICLanguageSettingEntry>() : getIncludePathEntries(
+					settings, setting.getLanguageId());
+			if (setSettingEntries(setting, ICSettingEntry.INCLUDE_PATH, l)) {
+				changes.add(SettingsChangeSet.Kind.INCLUDE_PATHS);
+			}
 		}
-		final List<ICIncludePathEntry> commonIncludePathEntries = new ArrayList<ICIncludePathEntry>();
+	}
+
+	static List<ICLanguageSettingEntry> getIncludePathEntries(final NarBuildArtifact settings, final String languageId) {
+		final List<ICLanguageSettingEntry> l = new ArrayList<ICLanguageSettingEntry>();
 		for (final String path : settings.getJavahIncludePaths()) {
-			ICIncludePathEntry includePath = createIncludePathEntry(path, ICSettingEntry.LOCAL);
-			commonIncludePathEntries.add(includePath);
+			l.add(createIncludePathEntry(path, ICSettingEntry.LOCAL));
 		}
 		for (final String path : settings.getJavaIncludePaths()) {
-			ICIncludePathEntry includePath = createIncludePathEntry(path, 0);
-			commonIncludePathEntries.add(includePath);
+			l.add(createIncludePathEntry(path, 0));
 		}
 		for (final File f : settings.getDependencyIncludePaths()) {
-			ICIncludePathEntry includePath = createIncludePathEntry(f.getPath(), 0);
-			commonIncludePathEntries.add(includePath);
+			l.add(createIncludePathEntry(f.getPath(), 0));
 		}
-		for (ICLanguageSetting setting : languageSettings) {
-			final List<ICLanguageSettingEntry> l = setting.getSettingEntriesList(ICSettingEntry.INCLUDE_PATH);
-			l.clear();
-			l.addAll(commonIncludePathEntries);
-			if (cppLanguageId.equals(setting.getLanguageId())) {
-				l.addAll(cppIncludePathEntries);
-			} else if (cLanguageId.equals(setting.getLanguageId())) {
-				l.addAll(cIncludePathEntries);
+		NarCompiler compilerSettings = null;
+		if (cppLanguageId.equals(languageId)) {
+			compilerSettings = settings.getCppSettings();
+		} else if (cLanguageId.equals(languageId)) {
+			compilerSettings = settings.getCSettings();
+		}
+		if (compilerSettings != null) {
+			for (final String path : compilerSettings.getIncludePaths()) {
+				l.add(createIncludePathEntry(path, ICSettingEntry.LOCAL));
+			}
+			for (final String path : compilerSettings.getSystemIncludePaths()) {
+				l.add(createIncludePathEntry(path, 0));
 			}
-			setting.setSettingEntries(ICSettingEntry.INCLUDE_PATH, l);
 		}
+		return intern(l);
 	}
 
-	private void setDefinedSymbols(final ICConfigurationDescription conf, final NarBuildArtifact settings) throws CoreException {
+	private void setDefinedSymbols(final ICConfigurationDescription conf, final NarBuildArtifact settings, final SettingsChangeSet changes)
+			throws CoreException {
 		final ICLanguageSetting[] languageSettings = conf.getRootFolderDescription().getLanguageSettings();
-
-		final List<ICMacroEntry> cMacroEntries = new ArrayList<ICMacroEntry>();
-		for (final String define : settings.getCSettings().getDefines()) {
-			final String escapedDefine = CdtUtils.escapeOption(define);
-			ICMacroEntry macroEntry = createMacroEntry(escapedDefine, 0);
-			cMacroEntries.add(macroEntry);
-		}
-		final List<ICMacroEntry> cppMacroEntries = new ArrayList<ICMacroEntry>();
-		for (final String define : settings.getCppSettings().getDefines()) {
-			final String escapedDefine = CdtUtils.escapeOption(define);
-			ICMacroEntry macroEntry = createMacroEntry(escapedDefine, 0);
-			cppMacroEntries.add(macroEntry);
-		}
 		for (ICLanguageSetting setting : languageSettings) {
-			final List<ICLanguageSettingEntry> l = setting.getSettingEntriesList(ICSettingEntry.MACRO);
-			l.clear();
-			if (cppLanguageId.equals(setting.getLanguageId())) {
-				l.addAll(cppMacroEntries);
-			} else if (cLanguageId.equals(setting.getLanguageId())) {
-				l.addAll(cMacroEntries);
+			final List<ICLanguageSettingEntry> l = settings.isLanguageSettingsProvider() ? new ArrayList<ICLanguageSettingEntry>() : getMacroEntries(
+					settings, setting.getLanguageId());
+			if (setSettingEntries(setting, ICSettingEntry.MACRO, l)) {
+				changes.add(SettingsChangeSet.Kind.MACROS);
 			}
-			setting.setSettingEntries(ICSettingEntry.MACRO, l);
 		}
 
 	}
 
-	private void setSourceDirs(final ICConfigurationDescription conf, final NarBuildArtifact settings) throws CoreException {
+	static List<ICLanguageSettingEntry> getMacroEntries(final NarBuildArtifact settings, final String languageId) {
+		final List<ICLanguageSettingEntry> l = new ArrayList<ICLanguageSettingEntry>();
+		NarCompiler compilerSettings = null;
+		if (cppLanguageId.equals(languageId)) {
+			compilerSettings = settings.getCppSettings();
+		} else if (cLanguageId.equals(languageId)) {
+			compilerSettings = settings.getCSettings();
+		}
+		if (compilerSettings != null) {
+			for (final String define : compilerSettings.getDefines()) {
+				final String escapedDefine = CdtUtils.escapeOption(define);
+				l.add(createMacroEntry(escapedDefine, 0));
+			}
+		}
+		return intern(l);
+	}
+
+	private void setSourceDirs(final ICConfigurationDescription conf, final NarBuildArtifact settings, final SettingsChangeSet changes) throws CoreException {
 		final Map<String, Set<String>> sourceDirs = new HashMap<String, Set<String>>();
 		for (final File f : settings.getCppSettings().getSourceDirectories()) {
 			sourceDirs.put(f.getPath(), settings.getCppSettings().getExcludes());
@@ -208,13 +257,27 @@ public abstract class AbstractSettingsSynchroniser implements SettingsSynchronis
 			sourceEntries[i] = createSourcePathEntry(sourceDir.getKey(), sourceDir.getValue(), 0);
 			++i;
 		}
-		conf.setSourceEntries(sourceEntries);
+		// Source entries are built from a map so their order is not significant
+		if (!sameEntries(Arrays.asList(conf.getSourceEntries()), Arrays.asList(sourceEntries), false)) {
+			conf.setSourceEntries(sourceEntries);
+			changes.add(SettingsChangeSet.Kind.SOURCE_ENTRIES);
+		}
 	}
 
-	private void setLibraryPaths(final ICConfigurationDescription conf, final NarBuildArtifact settings) throws CoreException {
+	private void setLibraryPaths(final ICConfigurationDescription conf, final NarBuildArtifact settings, final SettingsChangeSet changes) throws CoreException {
 		final ICLanguageSetting[] languageSettings = conf.getRootFolderDescription().getLanguageSettings();
+		final List<ICLanguageSettingEntry> libraryPathEntries = settings.isLanguageSettingsProvider() ? new ArrayList<ICLanguageSettingEntry>()
+				: getLibraryPathEntries(settings);
+		for (final ICLanguageSetting setting : languageSettings) {
+			final List<ICLanguageSettingEntry> l = new ArrayList<ICLanguageSettingEntry>(libraryPathEntries);
+			if (setSettingEntries(setting, ICSettingEntry.LIBRARY_PATH, l)) {
+				changes.add(SettingsChangeSet.Kind.LIBRARY_PATHS);
+			}
+		}
+	}
 
-		final List<ICLibraryPathEntry> libraryPathEntries = new ArrayList<ICLibraryPathEntry>();
+	static List<ICLanguageSettingEntry> getLibraryPathEntries(final NarBuildArtifact settings) {
+		final List<ICLanguageSettingEntry> libraryPathEntries = new ArrayList<ICLanguageSettingEntry>();
 		for (final NarLib lib : settings.getDependencyLibs()) {
 			ICLibraryPathEntry libraryPath = createLibraryPathEntry(lib.getDirectory().getPath(), 0);
 			libraryPathEntries.add(libraryPath);
@@ -223,18 +286,24 @@ public abstract class AbstractSettingsSynchroniser implements SettingsSynchronis
 			ICLibraryPathEntry libraryPath = createLibraryPathEntry(lib.getDirectory().getPath(), 0);
 			libraryPathEntries.add(libraryPath);
 		}
-		for (final ICLanguageSetting setting : languageSettings) {
-			final List<ICLanguageSettingEntry> l = setting.getSettingEntriesList(ICSettingEntry.LIBRARY_PATH);
-			l.clear();
-			l.addAll(libraryPathEntries);
-			setting.setSettingEntries(ICSettingEntry.LIBRARY_PATH, l);
-		}
+		// Libraries in the same directory share a single entry
+		return intern(libraryPathEntries);
 	}
 
-	private void setLibraries(final ICConfigurationDescription conf, final NarBuildArtifact settings) throws CoreException {
+	private void setLibraries(final ICConfigurationDescription conf, final NarBuildArtifact settings, final SettingsChangeSet changes) throws CoreException {
 		final ICLanguageSetting[] languageSettings = conf.getRootFolderDescription().getLanguageSettings();
+		final List<ICLanguageSettingEntry> libraryEntries = settings.isLanguageSettingsProvider() ? new ArrayList<ICLanguageSettingEntry>()
+				: getLibraryFileEntries(settings);
+		for (final ICLanguageSetting setting : languageSettings) {
+			final List<ICLanguageSettingEntry> l = new ArrayList<ICLanguageSettingEntry>(libraryEntries);
+			if (setSettingEntries(setting, ICSettingEntry.LIBRARY_FILE, l)) {
+				changes.add(SettingsChangeSet.Kind.LIBRARIES);
+			}
+		}
+	}
 
-		final List<ICLibraryFileEntry> libraryEntries = new ArrayList<ICLibraryFileEntry>();
+	static List<ICLanguageSettingEntry> getLibraryFileEntries(final NarBuildArtifact settings) {
+		final List<ICLanguageSettingEntry> libraryEntries = new ArrayList<ICLanguageSettingEntry>();
 		for (final NarLib lib : settings.getDependencyLibs()) {
 			final ICLibraryFileEntry library = CDataUtil.createCLibraryFileEntry(lib.getName(), 0);
 			libraryEntries.add(library);
@@ -256,31 +325,99 @@ public abstract class AbstractSettingsSynchroniser implements SettingsSynchronis
 		 * library = CDataUtil.createCLibraryFileEntry(lib, 0);
 		 * libraryPathEntries.add(library); }
 		 */
-		for (final ICLanguageSetting setting : languageSettings) {
-			final List<ICLanguageSettingEntry> l = setting.getSettingEntriesList(ICSettingEntry.LIBRARY_FILE);
-			l.clear();
-			l.addAll(libraryEntries);
-			setting.setSettingEntries(ICSettingEntry.LIBRARY_FILE, l);
+		return intern(libraryEntries);
+	}
+
+	/**
+	 * Removes duplicate entries, keeping the first occurrence, and replaces
+	 * each entry with the pooled instance shared by all configurations.
+	 */
+	private static List<ICLanguageSettingEntry> intern(final List<ICLanguageSettingEntry> entries) {
+		final Set<ICLanguageSettingEntry> unique = new LinkedHashSet<ICLanguageSettingEntry>();
+		for (final ICLanguageSettingEntry entry : entries) {
+			unique.add(CDataUtil.getPooledEntry(entry));
 		}
+		return new ArrayList<ICLanguageSettingEntry>(unique);
+	}
+
+	/**
+	 * Sets the entries of the given kind, unless they already match the
+	 * current entries.
+	 * 
+	 * @return true if the entries were changed
+	 */
+	private boolean setSettingEntries(final ICLanguageSetting setting, final int kind, final List<ICLanguageSettingEntry> entries) {
+		if (sameEntries(setting.getSettingEntriesList(kind), entries, true)) {
+			return false;
+		}
+		setting.setSettingEntries(kind, entries);
+		return true;
+	}
+
+	private static boolean sameEntries(final List<? extends ICSettingEntry> current, final List<? extends ICSettingEntry> entries, final boolean ordered) {
+		if (current.size() != entries.size()) {
+			return false;
+		}
+		if (ordered) {
+			for (int i = 0; i < entries.size(); ++i) {
+				if (!sameEntry(current.get(i), entries.get(i))) {
+					return false;
+				}
+			}
+		} else {
+			for (final ICSettingEntry entry : entries) {
+				boolean found = false;
+				for (final ICSettingEntry currentEntry : current) {
+					if (sameEntry(currentEntry, entry)) {
+						found = true;
+						break;
+					}
+				}
+				if (!found) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean sameEntry(final ICSettingEntry current, final ICSettingEntry entry) {
+		// Entries read back from CDT may have been flagged as resolved
+		final int flagsMask = ~ICSettingEntry.RESOLVED;
+		if (current.getKind() != entry.getKind() || (current.getFlags() & flagsMask) != (entry.getFlags() & flagsMask)
+				|| !current.getName().equals(entry.getName())) {
+			return false;
+		}
+		if (current.getValue() == null ? entry.getValue() != null : !current.getValue().equals(entry.getValue())) {
+			return false;
+		}
+		if (current instanceof ICExclusionPatternPathEntry && entry instanceof ICExclusionPatternPathEntry) {
+			return Arrays.equals(getExclusionPatterns((ICExclusionPatternPathEntry) current), getExclusionPatterns((ICExclusionPatternPathEntry) entry));
+		}
+		return true;
+	}
+
+	private static IPath[] getExclusionPatterns(final ICExclusionPatternPathEntry entry) {
+		final IPath[] exclusionPatterns = entry.getExclusionPatterns();
+		return exclusionPatterns != null ? exclusionPatterns : new IPath[0];
 	}
 
-	private ICIncludePathEntry createIncludePathEntry(final String path, final int flags) {
-		final IWorkspaceRoot workspace = ResourcesPlugin.getWorkspace().getRoot();
+	private static ICIncludePathEntry createIncludePathEntry(final String path, final int flags) {
 		final File file = new File(path);
 		logger.debug("Include path " + path);
 		if (!file.isAbsolute()) {
 			return CDataUtil.createCIncludePathEntry(path, ICSettingEntry.VALUE_WORKSPACE_PATH | flags);
 		} else {
-			IContainer container = workspace.getContainerForLocation(Path.fromOSString(path));
-			if (container == null) {
+			final IPath workspacePath = MavenNarPlugin.getDefault().getWorkspacePathResolver().getWorkspacePath(path);
+			if (workspacePath == null) {
 				return CDataUtil.createCIncludePathEntry(path, flags);
 			} else {
-				return CDataUtil.createCIncludePathEntry(container.getFullPath().toOSString(), ICSettingEntry.VALUE_WORKSPACE_PATH | flags);
+				return CDataUtil.createCIncludePathEntry(workspacePath.toOSString(), ICSettingEntry.VALUE_WORKSPACE_PATH | flags);
 			}
 		}
 	}
 
-	private ICMacroEntry createMacroEntry(final String define, final int flags) {
+	private static ICMacroEntry createMacroEntry(final String define, final int flags) {
 		final String[] split = define.split("=", 2);
 		return CDataUtil.createCMacroEntry(split[0], (split.length > 1 ? split[1] : null), flags);
 	}
@@ -296,33 +433,31 @@ public abstract class AbstractSettingsSynchroniser implements SettingsSynchronis
 			}
 			logger.debug("Excludes for source path " + path + ": " + Arrays.deepToString(exclusionPatterns));
 		}
-		final IWorkspaceRoot workspace = ResourcesPlugin.getWorkspace().getRoot();
 		final File file = new File(path);
 		if (!file.isAbsolute()) {
 			return (ICSourceEntry) CDataUtil.createEntry(ICLanguageSettingEntry.SOURCE_PATH, path, null, exclusionPatterns, ICSettingEntry.VALUE_WORKSPACE_PATH
 					| flags);
 		} else {
-			IContainer container = workspace.getContainerForLocation(Path.fromOSString(path));
-			if (container == null) {
+			final IPath workspacePath = MavenNarPlugin.getDefault().getWorkspacePathResolver().getWorkspacePath(path);
+			if (workspacePath == null) {
 				return (ICSourceEntry) CDataUtil.createEntry(ICLanguageSettingEntry.SOURCE_PATH, path, null, exclusionPatterns, flags);
 			} else {
-				return (ICSourceEntry) CDataUtil.createEntry(ICLanguageSettingEntry.SOURCE_PATH, container.getFullPath().toOSString(), null, exclusionPatterns,
+				return (ICSourceEntry) CDataUtil.createEntry(ICLanguageSettingEntry.SOURCE_PATH, workspacePath.toOSString(), null, exclusionPatterns,
 						ICSettingEntry.VALUE_WORKSPACE_PATH | flags);
 			}
 		}
 	}
 
-	private ICLibraryPathEntry createLibraryPathEntry(final String path, final int flags) {
-		final IWorkspaceRoot workspace = ResourcesPlugin.getWorkspace().getRoot();
+	private static ICLibraryPathEntry createLibraryPathEntry(final String path, final int flags) {
 		final File file = new File(path);
 		if (!file.isAbsolute()) {
 			return CDataUtil.createCLibraryPathEntry(path, ICSettingEntry.VALUE_WORKSPACE_PATH | flags);
 		} else {
-			IContainer container = workspace.getContainerForLocation(Path.fromOSString(path));
-			if (container == null) {
+			final IPath workspacePath = MavenNarPlugin.getDefault().getWorkspacePathResolver().getWorkspacePath(path);
+			if (workspacePath == null) {
 				return CDataUtil.createCLibraryPathEntry(path, flags);
 			} else {
-				return CDataUtil.createCLibraryPathEntry(container.getFullPath().toOSString(), ICSettingEntry.VALUE_WORKSPACE_PATH | flags);
+				return CDataUtil.createCLibraryPathEntry(workspacePath.toOSString(), ICSettingEntry.VALUE_WORKSPACE_PATH | flags);
 			}
 		}
 	}
@@ -19,9 +19,20 @@
  */
 package com.github.sdedwards.m2e_nar.internal.cdt;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.maven.plugin.MojoExecution;
+import org.eclipse.cdt.core.model.CoreModel;
+import org.eclipse.cdt.core.settings.model.ICProjectDescription;
 import org.eclipse.cdt.managedbuilder.core.ManagedBuildManager;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
 
+import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+import com.github.sdedwards.m2e_nar.internal.PhaseTimings;
+import com.github.sdedwards.m2e_nar.internal.PhaseTimings.Phase;
 import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
 
 public final class CdtUtils {
@@ -29,6 +40,8 @@ public final class CdtUtils {
 	public static final String DEFAULT_CONFIG_NAME_PREFIX = "nar-";
 	public static final String DEFAULT_TEST_CONFIG_NAME_PREFIX = "nar-test-";
 
+	private static final ConcurrentMap<IProject, AtomicInteger> descriptionWrites = new ConcurrentHashMap<IProject, AtomicInteger>();
+
 	// private static final String DEFAULT_NAR_COMPILE_EXECUTION =
 	// "default-nar-compile";
 	// private static final String DEFAULT_NAR_TESTCOMPILE_EXECUTION =
@@ -73,4 +86,29 @@ public final class CdtUtils {
 		}
 		return option;
 	}
+
+	/**
+	 * Commits the project description, counting the number of writes made for
+	 * each project.
+	 */
+	public static void setProjectDescription(final IProject project, final ICProjectDescription des) throws CoreException {
+		final PhaseTimings timings = MavenNarPlugin.getDefault().getPhaseTimings();
+		final long start = timings.start();
+		CoreModel.getDefault().getProjectDescriptionManager().setProjectDescription(project, des);
+		timings.record(Phase.WRITE_DESCRIPTION, project.getName(), start);
+		AtomicInteger writes = descriptionWrites.get(project);
+		if (writes == null) {
+			final AtomicInteger newWrites = new AtomicInteger();
+			writes = descriptionWrites.putIfAbsent(project, newWrites);
+			if (writes == null) {
+				writes = newWrites;
+			}
+		}
+		writes.incrementAndGet();
+	}
+
+	public static int getProjectDescriptionWriteCount(final IProject project) {
+		final AtomicInteger writes = descriptionWrites.get(project);
+		return writes != null ? writes.get() : 0;
+	}
 }
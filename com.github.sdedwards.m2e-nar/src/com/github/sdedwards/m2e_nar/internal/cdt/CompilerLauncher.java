@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal.cdt;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.project.MavenProject;
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.envvar.IContributedEnvironment;
+import org.eclipse.cdt.core.envvar.IEnvironmentVariable;
+import org.eclipse.cdt.core.settings.model.ICConfigurationDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
+
+/**
+ * Support for running the compilers of NAR configurations through an external
+ * launcher, set with the m2e.nar.compilerLauncher property. The launcher is
+ * prefixed to the compiler command as is; no cache is bundled. Caching, its
+ * store and eviction are left to a launcher such as ccache. Each configuration
+ * points the CCACHE_STATSLOG variable at its own file, from which the ccache
+ * hit and miss counts are read. Other launchers leave the counts at zero.
+ */
+public final class CompilerLauncher {
+
+	private static final Logger logger = LoggerFactory.getLogger(CompilerLauncher.class);
+
+	public static final String LAUNCHER_PROPERTY_KEY = "m2e.nar.compilerLauncher";
+
+	// ccache appends the result of each compilation to this file
+	private static final String STATS_LOG_VARIABLE = "CCACHE_STATSLOG";
+
+	private static final String STATS_LOG_NAME = "ccache-stats.log";
+
+	// Statistics files keyed by project and configuration name
+	private static final ConcurrentMap<String, File> statsLogs = new ConcurrentHashMap<String, File>();
+
+	private CompilerLauncher() {
+	}
+
+	/**
+	 * Returns the compiler launcher of the project, or null if none is
+	 * configured.
+	 */
+	public static String getLauncher(final MavenProject mavenProject) {
+		final String launcher = mavenProject.getProperties().getProperty(LAUNCHER_PROPERTY_KEY);
+		return launcher != null && launcher.trim().length() > 0 ? launcher.trim() : null;
+	}
+
+	public static File getStatsLog(final MavenProject mavenProject, final String configName) {
+		return new File(new File(new File(mavenProject.getBuild().getDirectory(), "m2e-nar"), configName), STATS_LOG_NAME);
+	}
+
+	/**
+	 * Returns the compiler command prefixed with the launcher of the artifact.
+	 */
+	public static String getCommand(final String command, final NarBuildArtifact artifactSettings) {
+		final String launcher = artifactSettings.getCompilerLauncher();
+		return command != null && launcher != null ? launcher + " " + command : command;
+	}
+
+	/**
+	 * Points the statistics log of the launcher at the file of the
+	 * configuration, or removes it if no launcher is used.
+	 * 
+	 * @return true if the configuration environment was changed
+	 */
+	public static boolean setStatsLog(final ICConfigurationDescription cfg, final NarBuildArtifact artifactSettings) {
+		final IContributedEnvironment environment = CCorePlugin.getDefault().getBuildEnvironmentManager().getContributedEnvironment();
+		final IEnvironmentVariable current = environment.getVariable(STATS_LOG_VARIABLE, cfg);
+		final File statsLog = artifactSettings.getCompilerLauncher() != null ? artifactSettings.getLauncherStatsLog() : null;
+		final String key = cfg.getProjectDescription().getName() + "/" + cfg.getName();
+		if (statsLog == null) {
+			statsLogs.remove(key);
+			if (current != null) {
+				environment.removeVariable(STATS_LOG_VARIABLE, cfg);
+				return true;
+			}
+			return false;
+		}
+		statsLogs.put(key, statsLog);
+		final File dir = statsLog.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			logger.warn("Could not create " + dir);
+		}
+		if (current != null && statsLog.getAbsolutePath().equals(current.getValue()) && current.getOperation() == IEnvironmentVariable.ENVVAR_REPLACE) {
+			return false;
+		}
+		environment.addVariable(STATS_LOG_VARIABLE, statsLog.getAbsolutePath(), IEnvironmentVariable.ENVVAR_REPLACE, null, cfg);
+		return true;
+	}
+
+	/**
+	 * Returns the ccache hit and miss counts of each configuration using a
+	 * launcher, read from their statistics logs.
+	 */
+	public static Map<String, Long> getStatistics() {
+		final Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		for (final Map.Entry<String, File> statsLog : new TreeMap<String, File>(statsLogs).entrySet()) {
+			long hits = 0;
+			long misses = 0;
+			final File file = statsLog.getValue();
+			if (file.isFile()) {
+				try {
+					final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+					try {
+						String line = reader.readLine();
+						while (line != null) {
+							line = line.trim();
+							// Lines starting with # name the compiled source
+							if ("direct_cache_hit".equals(line) || "preprocessed_cache_hit".equals(line)) {
+								++hits;
+							} else if ("cache_miss".equals(line)) {
+								++misses;
+							}
+							line = reader.readLine();
+						}
+					} finally {
+						reader.close();
+					}
+				} catch (IOException e) {
+					logger.warn("Could not read " + file, e);
+				}
+			}
+			statistics.put("compilerLauncher." + statsLog.getKey() + ".hits", hits);
+			statistics.put("compilerLauncher." + statsLog.getKey() + ".misses", misses);
+		}
+		return statistics;
+	}
+}
@@ -42,4 +42,15 @@ public class MacosxCLinkerSynchroniser extends AbstractGnuLinkerSynchroniser {
 	public String getSharedOptionId() {
 		return cShared;
 	}
+
+	@Override
+	public String getGcSectionsFlag() {
+		return "-Wl,-dead_strip";
+	}
+
+	@Override
+	public String getBindNowFlag() {
+		// Mach-O binds lazily through stubs rather than a PLT
+		return null;
+	}
 }
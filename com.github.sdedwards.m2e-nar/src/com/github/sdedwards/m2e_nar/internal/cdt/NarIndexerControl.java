@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal.cdt;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.cdt.core.index.IndexerSetupParticipant;
+import org.eclipse.cdt.core.model.CoreModel;
+import org.eclipse.cdt.core.model.ICProject;
+import org.eclipse.core.resources.IProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds back the indexer of projects while their NAR settings are being
+ * updated. The set up of the indexer of a new project is postponed until the
+ * update has finished. For an existing project the language settings change
+ * events which make CDT update the index are held back and sent once, for all
+ * the configurations changed, when the update has finished. Changes written to
+ * the project description are picked up by CDT itself, so no explicit
+ * re-index is requested.
+ */
+public class NarIndexerControl extends IndexerSetupParticipant {
+
+	private static final Logger logger = LoggerFactory.getLogger(NarIndexerControl.class);
+
+	// Number of updates in progress for each project
+	private final Map<IProject, Integer> suspended = new HashMap<IProject, Integer>();
+	// Projects whose indexer set up has been postponed
+	private final Set<IProject> postponed = new HashSet<IProject>();
+	// Configurations whose language settings changed during the updates in
+	// progress
+	private final Map<IProject, Set<String>> changedConfigurations = new HashMap<IProject, Set<String>>();
+
+	public synchronized void suspend(final IProject project) {
+		final Integer count = suspended.get(project);
+		suspended.put(project, count != null ? count + 1 : 1);
+	}
+
+	/**
+	 * Ends an update of the project started with {@link #suspend}. Once no
+	 * updates are in progress the indexer is set up if it was postponed,
+	 * otherwise the language settings changes held back are sent.
+	 */
+	public void resume(final IProject project) {
+		final boolean setup;
+		final Set<String> cfgIds;
+		synchronized (this) {
+			final Integer count = suspended.get(project);
+			if (count != null && count > 1) {
+				suspended.put(project, count - 1);
+				return;
+			}
+			suspended.remove(project);
+			setup = postponed.remove(project);
+			cfgIds = changedConfigurations.remove(project);
+		}
+		if (setup) {
+			final ICProject cproject = CoreModel.getDefault().create(project);
+			if (cproject != null) {
+				// Setting up the indexer indexes the whole project
+				logger.debug("Indexer set up resumed: project=" + project.getName());
+				notifyIndexerSetup(cproject);
+			}
+		} else if (cfgIds != null) {
+			logger.debug("Language settings changes resumed: project=" + project.getName() + ", configurations=" + cfgIds);
+			NarLanguageSettingsProvider.notifyChanged(project.getName(), cfgIds.toArray(new String[cfgIds.size()]));
+		}
+	}
+
+	/**
+	 * Records a change to the language settings of the configurations of a
+	 * suspended project. Returns false if the project is not suspended and the
+	 * change should be sent straight away.
+	 */
+	synchronized boolean holdLanguageSettingsChange(final IProject project, final Set<String> cfgIds) {
+		if (!suspended.containsKey(project)) {
+			return false;
+		}
+		Set<String> changed = changedConfigurations.get(project);
+		if (changed == null) {
+			changed = new LinkedHashSet<String>();
+			changedConfigurations.put(project, changed);
+		}
+		changed.addAll(cfgIds);
+		return true;
+	}
+
+	@Override
+	public synchronized boolean postponeIndexerSetup(final ICProject cproject) {
+		final IProject project = cproject.getProject();
+		if (suspended.containsKey(project)) {
+			postponed.add(project);
+			return true;
+		}
+		return false;
+	}
+}
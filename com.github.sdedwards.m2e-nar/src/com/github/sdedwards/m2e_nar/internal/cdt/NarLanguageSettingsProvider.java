@@ -0,0 +1,218 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal.cdt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.project.MavenProject;
+import org.eclipse.cdt.core.language.settings.providers.ILanguageSettingsChangeEvent;
+import org.eclipse.cdt.core.language.settings.providers.ILanguageSettingsProvider;
+import org.eclipse.cdt.core.language.settings.providers.ILanguageSettingsProvidersKeeper;
+import org.eclipse.cdt.core.language.settings.providers.LanguageSettingsBaseProvider;
+import org.eclipse.cdt.core.language.settings.providers.LanguageSettingsManager;
+import org.eclipse.cdt.core.language.settings.providers.ScannerDiscoveryLegacySupport;
+import org.eclipse.cdt.core.settings.model.ICConfigurationDescription;
+import org.eclipse.cdt.core.settings.model.ICLanguageSetting;
+import org.eclipse.cdt.core.settings.model.ICLanguageSettingEntry;
+import org.eclipse.cdt.core.settings.model.ICProjectDescription;
+import org.eclipse.cdt.internal.core.language.settings.providers.LanguageSettingsProvidersSerializer;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sdedwards.m2e_nar.MavenNarPlugin;
+import com.github.sdedwards.m2e_nar.internal.BuildPathManager;
+import com.github.sdedwards.m2e_nar.internal.model.NarBuildArtifact;
+import com.github.sdedwards.m2e_nar.internal.model.NarExecution;
+
+/**
+ * Serves the include paths, macros and libraries of NAR configurations from
+ * the in-memory NAR model instead of storing them in the .cproject file.
+ * Enabled per project with the m2e.nar.languageSettingsProvider property.
+ * The entries are only seen by the indexer, so it is intended for projects
+ * which are built with Maven rather than the CDT managed build.
+ */
+@SuppressWarnings("restriction")
+public class NarLanguageSettingsProvider extends LanguageSettingsBaseProvider {
+
+	private static final Logger logger = LoggerFactory.getLogger(NarLanguageSettingsProvider.class);
+
+	public static final String ID = "com.github.sdedwards.m2e_nar.NarLanguageSettingsProvider";
+
+	public static final String ENABLE_PROPERTY_KEY = "m2e.nar.languageSettingsProvider";
+
+	// Entries keyed by project, then configuration id, then language id
+	private static final ConcurrentMap<IProject, Map<String, Map<String, List<ICLanguageSettingEntry>>>> entries = new ConcurrentHashMap<IProject, Map<String, Map<String, List<ICLanguageSettingEntry>>>>();
+
+	// Projects whose settings have been asked for before they were synchronised
+	private static final Set<IProject> requested = Collections.synchronizedSet(new HashSet<IProject>());
+
+	public static boolean isEnabled(final MavenProject mavenProject) {
+		return Boolean.parseBoolean(mavenProject.getProperties().getProperty(ENABLE_PROPERTY_KEY));
+	}
+
+	@Override
+	public List<ICLanguageSettingEntry> getSettingEntries(final ICConfigurationDescription cfgDescription, final IResource rc, final String languageId) {
+		if (cfgDescription == null || languageId == null) {
+			return null;
+		}
+		final ICProjectDescription prjDescription = cfgDescription.getProjectDescription();
+		final IProject project = prjDescription != null ? prjDescription.getProject() : null;
+		if (project == null) {
+			return null;
+		}
+		final Map<String, Map<String, List<ICLanguageSettingEntry>>> projectEntries = entries.get(project);
+		if (projectEntries == null) {
+			// The model is not persisted, so after a restart it has to be
+			// built again before the entries can be served
+			final BuildPathManager buildPathManager = MavenNarPlugin.getDefault().getBuildPathManager();
+			if (buildPathManager != null && requested.add(project)) {
+				logger.debug("Language settings requested before synchronisation: project=" + project.getName());
+				buildPathManager.scheduleUpdate(project);
+			}
+			return null;
+		}
+		final Map<String, List<ICLanguageSettingEntry>> cfgEntries = projectEntries.get(cfgDescription.getId());
+		return cfgEntries != null ? cfgEntries.get(languageId) : null;
+	}
+
+	/**
+	 * Adds the provider to or removes it from the configuration.
+	 * 
+	 * @return true if the providers of the configuration were changed
+	 */
+	public static boolean setProviderEnabled(final ICConfigurationDescription cfg, final boolean enabled) {
+		if (!(cfg instanceof ILanguageSettingsProvidersKeeper)) {
+			return false;
+		}
+		final ILanguageSettingsProvidersKeeper keeper = (ILanguageSettingsProvidersKeeper) cfg;
+		final List<ILanguageSettingsProvider> providers = new ArrayList<ILanguageSettingsProvider>(keeper.getLanguageSettingProviders());
+		boolean found = false;
+		boolean changed = false;
+		for (final Iterator<ILanguageSettingsProvider> it = providers.iterator(); it.hasNext();) {
+			if (ID.equals(it.next().getId())) {
+				if (enabled && !found) {
+					found = true;
+				} else {
+					it.remove();
+					changed = true;
+				}
+			}
+		}
+		if (enabled && !found) {
+			providers.add(LanguageSettingsManager.getWorkspaceProvider(ID));
+			changed = true;
+			final IProject project = cfg.getProjectDescription().getProject();
+			if (!ScannerDiscoveryLegacySupport.isLanguageSettingsProvidersFunctionalityEnabled(project)) {
+				ScannerDiscoveryLegacySupport.setLanguageSettingsProvidersFunctionalityEnabled(project, true);
+			}
+		}
+		if (changed) {
+			keeper.setLanguageSettingProviders(providers);
+		}
+		return changed;
+	}
+
+	/**
+	 * Updates the entries served for the project from its NAR executions and
+	 * sends a single change event for the configurations whose entries have
+	 * changed. The event is held back while the indexer of the project is
+	 * suspended.
+	 */
+	public static void update(final IProject project, final ICProjectDescription des, final List<NarExecution> narExecutions) {
+		final Map<String, Map<String, List<ICLanguageSettingEntry>>> projectEntries = new HashMap<String, Map<String, List<ICLanguageSettingEntry>>>();
+		for (final NarExecution narExecution : narExecutions) {
+			if (narExecution.isSkip()) {
+				continue;
+			}
+			for (final NarBuildArtifact artifactSettings : narExecution.getArtifactSettings()) {
+				final ICConfigurationDescription cfg = des.getConfigurationByName(artifactSettings.getConfigName());
+				if (cfg != null && artifactSettings.isLanguageSettingsProvider()) {
+					projectEntries.put(cfg.getId(), getEntries(cfg, artifactSettings));
+				}
+			}
+		}
+		Map<String, Map<String, List<ICLanguageSettingEntry>>> oldEntries = entries.put(project, projectEntries);
+		if (oldEntries == null) {
+			oldEntries = Collections.emptyMap();
+		}
+		final Set<String> changed = new LinkedHashSet<String>();
+		for (final Map.Entry<String, Map<String, List<ICLanguageSettingEntry>>> cfgEntries : projectEntries.entrySet()) {
+			if (!cfgEntries.getValue().equals(oldEntries.get(cfgEntries.getKey()))) {
+				changed.add(cfgEntries.getKey());
+			}
+		}
+		for (final String cfgId : oldEntries.keySet()) {
+			if (!projectEntries.containsKey(cfgId)) {
+				changed.add(cfgId);
+			}
+		}
+		if (!changed.isEmpty() && !MavenNarPlugin.getDefault().getIndexerControl().holdLanguageSettingsChange(project, changed)) {
+			logger.debug("Language settings changed: project=" + project.getName() + ", configurations=" + changed);
+			notifyChanged(project.getName(), changed.toArray(new String[changed.size()]));
+		}
+	}
+
+	public static void remove(final IProject project) {
+		entries.remove(project);
+		requested.remove(project);
+	}
+
+	private static Map<String, List<ICLanguageSettingEntry>> getEntries(final ICConfigurationDescription cfg, final NarBuildArtifact artifactSettings) {
+		final Map<String, List<ICLanguageSettingEntry>> cfgEntries = new HashMap<String, List<ICLanguageSettingEntry>>();
+		final List<ICLanguageSettingEntry> libraryEntries = new ArrayList<ICLanguageSettingEntry>();
+		libraryEntries.addAll(AbstractSettingsSynchroniser.getLibraryPathEntries(artifactSettings));
+		libraryEntries.addAll(AbstractSettingsSynchroniser.getLibraryFileEntries(artifactSettings));
+		for (final ICLanguageSetting setting : cfg.getRootFolderDescription().getLanguageSettings()) {
+			final String languageId = setting.getLanguageId();
+			if (languageId != null) {
+				final List<ICLanguageSettingEntry> l = new ArrayList<ICLanguageSettingEntry>();
+				l.addAll(AbstractSettingsSynchroniser.getIncludePathEntries(artifactSettings, languageId));
+				l.addAll(AbstractSettingsSynchroniser.getMacroEntries(artifactSettings, languageId));
+				l.addAll(libraryEntries);
+				cfgEntries.put(languageId, Collections.unmodifiableList(l));
+			}
+		}
+		return cfgEntries;
+	}
+
+	static void notifyChanged(final String projectName, final String[] cfgIds) {
+		LanguageSettingsProvidersSerializer.notifyLanguageSettingsChangeListeners(new ILanguageSettingsChangeEvent() {
+			public String getProjectName() {
+				return projectName;
+			}
+
+			public String[] getConfigurationDescriptionIds() {
+				return cfgIds;
+			}
+		});
+	}
+}
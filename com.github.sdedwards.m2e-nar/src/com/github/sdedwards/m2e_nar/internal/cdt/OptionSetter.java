@@ -19,6 +19,11 @@
  */
 package com.github.sdedwards.m2e_nar.internal.cdt;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.eclipse.cdt.managedbuilder.core.BuildException;
 import org.eclipse.cdt.managedbuilder.core.IConfiguration;
 import org.eclipse.cdt.managedbuilder.core.IOption;
@@ -29,64 +34,132 @@ import org.eclipse.core.runtime.Status;
 
 import com.github.sdedwards.m2e_nar.MavenNarPlugin;
 
+/**
+ * Collects the target values of the options of a tool and then applies them
+ * in a single pass per tool with {@link #commit()}, only writing the options
+ * whose values actually differ. This avoids cloning tools and dirtying the
+ * configuration when the settings have not changed.
+ */
 public final class OptionSetter {
 	private final IConfiguration config;
 	private final String toolId;
+	// Target values keyed by tool id, then by extension option id
+	private final Map<String, Map<String, Object>> targets = new LinkedHashMap<String, Map<String, Object>>();
 
 	public OptionSetter(final IConfiguration config, final String toolId) {
 		this.config = config;
 		this.toolId = toolId;
 	}
 
-	public void clearOptions() throws CoreException {
-		try {
-			for (ITool tool : config.getToolsBySuperClassId(toolId)) {
-				for (IOption option : tool.getOptions()) {
+	private static IOption getBaseOption(final IOption option) {
+		// Setting a value creates a child of the option so compare using the
+		// extension option it was derived from
+		IOption base = option;
+		while (!base.isExtensionElement() && base.getSuperClass() != null) {
+			base = base.getSuperClass();
+		}
+		return base;
+	}
+
+	private static Object normalise(final Object value) {
+		if (value == null) {
+			return "";
+		}
+		if (value instanceof Object[]) {
+			return Arrays.asList((Object[]) value);
+		}
+		if (value instanceof List) {
+			return Arrays.asList(((List<?>) value).toArray());
+		}
+		return value;
+	}
+
+	private Map<String, Object> getTargets(final ITool tool) {
+		Map<String, Object> toolTargets = targets.get(tool.getId());
+		if (toolTargets == null) {
+			toolTargets = new LinkedHashMap<String, Object>();
+			targets.put(tool.getId(), toolTargets);
+		}
+		return toolTargets;
+	}
+
+	public void clearOptions() {
+		for (ITool tool : config.getToolsBySuperClassId(toolId)) {
+			final Map<String, Object> toolTargets = getTargets(tool);
+			for (IOption option : tool.getOptions()) {
+				try {
 					switch (option.getValueType()) {
 					case IOption.BOOLEAN:
-						config.setOption(tool, option, false);
+						toolTargets.put(getBaseOption(option).getId(), Boolean.FALSE);
 						break;
 					case IOption.STRING:
-						config.setOption(tool, option, (String) null);
+						toolTargets.put(getBaseOption(option).getId(), null);
 						break;
 					}
+				} catch (BuildException e) {
+					// Option has an unknown value type, leave it alone
 				}
 			}
-		} catch (BuildException e) {
-			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't clear options", e));
 		}
 	}
 
-	public void setOption(final String optionId, final String value) throws CoreException {
-		try {
-			for (final ITool tool : config.getToolsBySuperClassId(toolId)) {
-				final IOption option = tool.getOptionBySuperClassId(optionId);
-				config.setOption(tool, option, value);
+	private void setTarget(final String optionId, final Object value) throws CoreException {
+		for (final ITool tool : config.getToolsBySuperClassId(toolId)) {
+			final IOption option = tool.getOptionBySuperClassId(optionId);
+			if (option == null) {
+				throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't set " + optionId + " option"));
 			}
-		} catch (BuildException e) {
-			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't set " + optionId + " option", e));
+			getTargets(tool).put(getBaseOption(option).getId(), value);
 		}
 	}
 
+	public void setOption(final String optionId, final String value) throws CoreException {
+		setTarget(optionId, value);
+	}
+
 	public void setOption(final String optionId, final String[] values) throws CoreException {
-		try {
-			for (final ITool tool : config.getToolsBySuperClassId(toolId)) {
-				final IOption option = tool.getOptionBySuperClassId(optionId);
-				config.setOption(tool, option, values);
-			}
-		} catch (BuildException e) {
-			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't set " + optionId + " option", e));
-		}
+		setTarget(optionId, values);
 	}
 
 	public void setOption(final String optionId, final boolean value) throws CoreException {
-		try {
-			for (final ITool tool : config.getToolsBySuperClassId(toolId)) {
-				final IOption option = tool.getOptionBySuperClassId(optionId);
-				config.setOption(tool, option, value);
+		setTarget(optionId, Boolean.valueOf(value));
+	}
+
+	/**
+	 * Writes the options whose target values differ from their current
+	 * values.
+	 * 
+	 * @return true if any option was written
+	 */
+	public boolean commit() throws CoreException {
+		boolean changed = false;
+		for (final ITool tool : config.getToolsBySuperClassId(toolId)) {
+			final Map<String, Object> toolTargets = targets.get(tool.getId());
+			if (toolTargets == null) {
+				continue;
+			}
+			for (final Map.Entry<String, Object> target : toolTargets.entrySet()) {
+				final String optionId = target.getKey();
+				final Object value = target.getValue();
+				try {
+					final IOption option = tool.getOptionBySuperClassId(optionId);
+					if (normalise(option.getValue()).equals(normalise(value))) {
+						continue;
+					}
+					if (value instanceof Boolean) {
+						config.setOption(tool, option, ((Boolean) value).booleanValue());
+					} else if (value instanceof String[]) {
+						config.setOption(tool, option, (String[]) value);
+					} else {
+						config.setOption(tool, option, (String) value);
+					}
+					changed = true;
+				} catch (BuildException e) {
+					throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't set " + optionId + " option", e));
+				}
 			}
-		} catch (BuildException e) {
-			throw new CoreException(new Status(IStatus.ERROR, MavenNarPlugin.PLUGIN_ID, "Couldn't set " + optionId + " option", e));
 		}
+		targets.clear();
+		return changed;
 	}
 }
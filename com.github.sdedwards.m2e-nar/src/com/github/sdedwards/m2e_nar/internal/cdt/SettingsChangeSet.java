@@ -0,0 +1,67 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal.cdt;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The kinds of CDT settings modified by a synchronisation. An empty change
+ * set means the configuration already matched the NAR settings and the
+ * project description does not need to be written.
+ */
+public final class SettingsChangeSet {
+
+	public enum Kind {
+		PROJECT_REFERENCES, INCLUDE_PATHS, MACROS, SOURCE_ENTRIES, LIBRARY_PATHS, LIBRARIES, ARTIFACT_NAME, TOOL_COMMAND, TOOL_OPTIONS,
+		LANGUAGE_SETTINGS_PROVIDERS, PARALLEL_BUILD, ENVIRONMENT
+	}
+
+	private final Set<Kind> kinds = EnumSet.noneOf(Kind.class);
+
+	public SettingsChangeSet() {
+	}
+
+	public void add(final Kind kind) {
+		kinds.add(kind);
+	}
+
+	public void addAll(final SettingsChangeSet changes) {
+		kinds.addAll(changes.kinds);
+	}
+
+	public boolean contains(final Kind kind) {
+		return kinds.contains(kind);
+	}
+
+	public boolean isEmpty() {
+		return kinds.isEmpty();
+	}
+
+	public Set<Kind> getKinds() {
+		return Collections.unmodifiableSet(kinds);
+	}
+
+	@Override
+	public String toString() {
+		return kinds.toString();
+	}
+}
@@ -49,6 +49,44 @@ public class NarBuildArtifact {
 	private List<NarSysLib> dependencySysLibs = new ArrayList<NarSysLib>();
 	private List<String> dependencyOptions = new ArrayList<String>();
 
+	private boolean languageSettingsProvider;
+
+	// 0 means use all available cores
+	private int maxCores;
+
+	private String compilerLauncher;
+	private File launcherStatsLog;
+
+	public NarBuildArtifact() {
+	}
+
+	/**
+	 * Creates a deep copy of the artifact settings.
+	 */
+	public NarBuildArtifact(final NarBuildArtifact other) {
+		configName = other.configName;
+		artifactName = other.artifactName;
+		type = other.type;
+		cppSettings = other.cppSettings != null ? new NarCompiler(other.cppSettings) : null;
+		cSettings = other.cSettings != null ? new NarCompiler(other.cSettings) : null;
+		linkerSettings = other.linkerSettings != null ? new NarLinker(other.linkerSettings) : null;
+		projectReferences.addAll(other.projectReferences);
+		javahIncludePaths.addAll(other.javahIncludePaths);
+		javaIncludePaths.addAll(other.javaIncludePaths);
+		dependencyIncludePaths.addAll(other.dependencyIncludePaths);
+		for (final NarLib lib : other.dependencyLibs) {
+			dependencyLibs.add(new NarLib(lib));
+		}
+		for (final NarSysLib sysLib : other.dependencySysLibs) {
+			dependencySysLibs.add(new NarSysLib(sysLib));
+		}
+		dependencyOptions.addAll(other.dependencyOptions);
+		languageSettingsProvider = other.languageSettingsProvider;
+		maxCores = other.maxCores;
+		compilerLauncher = other.compilerLauncher;
+		launcherStatsLog = other.launcherStatsLog;
+	}
+
 	public String getConfigName() {
 		return configName;
 	}
@@ -190,4 +228,82 @@ public class NarBuildArtifact {
 	public boolean isSharedLibrary() {
 		return isSharedLibrary(type);
 	}
+
+	public int getMaxCores() {
+		return maxCores;
+	}
+
+	public void setMaxCores(int maxCores) {
+		this.maxCores = maxCores;
+	}
+
+	/**
+	 * Returns the launcher to prefix to the compiler commands, or null if none
+	 * is used.
+	 */
+	public String getCompilerLauncher() {
+		return compilerLauncher;
+	}
+
+	public void setCompilerLauncher(String compilerLauncher) {
+		this.compilerLauncher = compilerLauncher;
+	}
+
+	/**
+	 * Returns the file the launcher logs its ccache results to.
+	 */
+	public File getLauncherStatsLog() {
+		return launcherStatsLog;
+	}
+
+	public void setLauncherStatsLog(File launcherStatsLog) {
+		this.launcherStatsLog = launcherStatsLog;
+	}
+
+	/**
+	 * Returns true if the include paths, macros and libraries are served by
+	 * the NAR language settings provider rather than stored in the
+	 * configuration.
+	 */
+	public boolean isLanguageSettingsProvider() {
+		return languageSettingsProvider;
+	}
+
+	public void setLanguageSettingsProvider(boolean languageSettingsProvider) {
+		this.languageSettingsProvider = languageSettingsProvider;
+	}
+
+	/**
+	 * Returns true if the other artifact has the same settings as this one
+	 * for everything synchronised by a paths only sync: project references,
+	 * include paths, libraries, linker options and whether the language
+	 * settings provider is used.
+	 */
+	public boolean hasSamePaths(final NarBuildArtifact other) {
+		return equal(type, other.type) && languageSettingsProvider == other.languageSettingsProvider && projectReferences.equals(other.projectReferences) && javahIncludePaths.equals(other.javahIncludePaths)
+				&& javaIncludePaths.equals(other.javaIncludePaths) && dependencyIncludePaths.equals(other.dependencyIncludePaths)
+				&& dependencyLibs.equals(other.dependencyLibs) && dependencySysLibs.equals(other.dependencySysLibs)
+				&& hasSameIncludePaths(cSettings, other.cSettings) && hasSameIncludePaths(cppSettings, other.cppSettings)
+				&& hasSameLinkerSettings(linkerSettings, other.linkerSettings);
+	}
+
+	private static boolean hasSameIncludePaths(final NarCompiler compiler, final NarCompiler other) {
+		if (compiler == null || other == null) {
+			return compiler == other;
+		}
+		return compiler.getIncludePaths().equals(other.getIncludePaths()) && compiler.getSystemIncludePaths().equals(other.getSystemIncludePaths());
+	}
+
+	private static boolean hasSameLinkerSettings(final NarLinker linker, final NarLinker other) {
+		if (linker == null || other == null) {
+			return linker == other;
+		}
+		return linker.isIncremental() == other.isIncremental() && linker.isMap() == other.isMap() && linker.getOptions().equals(other.getOptions())
+				&& linker.getLibs().equals(other.getLibs()) && linker.getSysLibs().equals(other.getSysLibs())
+				&& linker.getPerformanceProfiles().equals(other.getPerformanceProfiles());
+	}
+
+	private static boolean equal(final Object a, final Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
 }
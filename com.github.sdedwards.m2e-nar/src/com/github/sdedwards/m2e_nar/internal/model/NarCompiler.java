@@ -21,6 +21,7 @@ package com.github.sdedwards.m2e_nar.internal.model;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -48,6 +49,32 @@ public class NarCompiler {
 	private List<String> options = new ArrayList<String>();
 	private Set<String> includes = new HashSet<String>();
 	private Set<String> excludes = new HashSet<String>();
+	private final Set<PerformanceProfile> performanceProfiles = EnumSet.noneOf(PerformanceProfile.class);
+
+	public NarCompiler() {
+	}
+
+	/**
+	 * Creates a deep copy of the compiler settings.
+	 */
+	public NarCompiler(final NarCompiler other) {
+		name = other.name;
+		includePaths.addAll(other.includePaths);
+		systemIncludePaths.addAll(other.systemIncludePaths);
+		sourceDirectories.addAll(other.sourceDirectories);
+		ignoreOptionElements = other.ignoreOptionElements;
+		debug = other.debug;
+		rtti = other.rtti;
+		optimize = other.optimize;
+		multiThreaded = other.multiThreaded;
+		exceptions = other.exceptions;
+		defines.addAll(other.defines);
+		undefines.addAll(other.undefines);
+		options.addAll(other.options);
+		includes.addAll(other.includes);
+		excludes.addAll(other.excludes);
+		performanceProfiles.addAll(other.performanceProfiles);
+	}
 
 	public String getName() {
 		return name;
@@ -194,5 +221,7 @@ public class NarCompiler {
 		this.ignoreOptionElements = ignoreOptionElements;
 	}
 
-	
+	public Set<PerformanceProfile> getPerformanceProfiles() {
+		return performanceProfiles;
+	}
 }
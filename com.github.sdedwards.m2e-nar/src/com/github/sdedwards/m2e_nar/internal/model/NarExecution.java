@@ -39,6 +39,19 @@ public class NarExecution {
 		this.mojoExecution = mojoExecution;
 	}
 
+	/**
+	 * Creates a deep copy of the execution, sharing only the mojo execution.
+	 */
+	public NarExecution(final NarExecution other) {
+		this.mojoExecution = other.mojoExecution;
+		this.skip = other.skip;
+		this.os = other.os;
+		this.linkerName = other.linkerName;
+		for (final NarBuildArtifact artifact : other.artifactSettings) {
+			artifactSettings.add(new NarBuildArtifact(artifact));
+		}
+	}
+
 	public MojoExecution getMojoExecution() {
 		return mojoExecution;
 	}
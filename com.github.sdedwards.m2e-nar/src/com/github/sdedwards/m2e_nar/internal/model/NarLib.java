@@ -29,6 +29,15 @@ public class NarLib {
 
 	private File directory;
 
+	public NarLib() {
+	}
+
+	public NarLib(final NarLib other) {
+		name = other.name;
+		type = other.type;
+		directory = other.directory;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -67,4 +76,29 @@ public class NarLib {
 	public void setDirectory(File directory) {
 		this.directory = directory;
 	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof NarLib)) {
+			return false;
+		}
+		final NarLib other = (NarLib) obj;
+		return equal(name, other.name) && equal(type, other.type) && equal(directory, other.directory);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 1;
+		result = 31 * result + (name != null ? name.hashCode() : 0);
+		result = 31 * result + (type != null ? type.hashCode() : 0);
+		result = 31 * result + (directory != null ? directory.hashCode() : 0);
+		return result;
+	}
+
+	private static boolean equal(final Object a, final Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
 }
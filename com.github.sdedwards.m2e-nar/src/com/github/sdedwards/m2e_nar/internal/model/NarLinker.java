@@ -20,7 +20,9 @@
 package com.github.sdedwards.m2e_nar.internal.model;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class NarLinker {
 
@@ -32,6 +34,28 @@ public class NarLinker {
 	private boolean map;
 	private final List<String> options = new ArrayList<String>();
 	private boolean linkCpp;
+	private final Set<PerformanceProfile> performanceProfiles = EnumSet.noneOf(PerformanceProfile.class);
+
+	public NarLinker() {
+	}
+
+	/**
+	 * Creates a deep copy of the linker settings.
+	 */
+	public NarLinker(final NarLinker other) {
+		name = other.name;
+		for (final NarLib lib : other.libs) {
+			libs.add(new NarLib(lib));
+		}
+		for (final NarSysLib sysLib : other.sysLibs) {
+			sysLibs.add(new NarSysLib(sysLib));
+		}
+		incremental = other.incremental;
+		map = other.map;
+		options.addAll(other.options);
+		linkCpp = other.linkCpp;
+		performanceProfiles.addAll(other.performanceProfiles);
+	}
 
 	public String getName() {
 		return name;
@@ -102,4 +126,7 @@ public class NarLinker {
 		this.linkCpp = linkCpp;
 	}
 
+	public Set<PerformanceProfile> getPerformanceProfiles() {
+		return performanceProfiles;
+	}
 }
@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a dependent project needs to know about a workspace NAR project: the
+ * artifact built for each library type and the include directories it
+ * exports.
+ */
+public class NarProjectNode {
+
+	private final String projectName;
+
+	private final Map<String, String> artifactNames;
+
+	private final List<String> includePaths;
+
+	public NarProjectNode(final String projectName, final Map<String, String> artifactNames, final List<String> includePaths) {
+		this.projectName = projectName;
+		this.artifactNames = Collections.unmodifiableMap(new LinkedHashMap<String, String>(artifactNames));
+		this.includePaths = Collections.unmodifiableList(new ArrayList<String>(includePaths));
+	}
+
+	/**
+	 * Creates the node from the compile executions of the project, or returns
+	 * null if they do not build any artifacts.
+	 */
+	public static NarProjectNode create(final String projectName, final List<NarExecution> narExecutions) {
+		final Map<String, String> artifactNames = new LinkedHashMap<String, String>();
+		NarBuildArtifact artifactSettings = null;
+		for (final NarExecution narSettings : narExecutions) {
+			for (final NarBuildArtifact settings : narSettings.getArtifactSettings()) {
+				artifactNames.put(settings.getType(), settings.getArtifactName());
+				artifactSettings = settings;
+			}
+		}
+		if (artifactSettings == null) {
+			return null;
+		}
+		final List<String> includePaths = new ArrayList<String>();
+		includePaths.addAll(artifactSettings.getCSettings().getIncludePaths());
+		includePaths.addAll(artifactSettings.getCppSettings().getIncludePaths());
+		return new NarProjectNode(projectName, artifactNames, includePaths);
+	}
+
+	public String getProjectName() {
+		return projectName;
+	}
+
+	/**
+	 * @return the artifact name for each library type, in build order
+	 */
+	public Map<String, String> getArtifactNames() {
+		return artifactNames;
+	}
+
+	public List<String> getIncludePaths() {
+		return includePaths;
+	}
+}
@@ -25,6 +25,14 @@ public class NarSysLib {
 
 	private String type;
 
+	public NarSysLib() {
+	}
+
+	public NarSysLib(final NarSysLib other) {
+		name = other.name;
+		type = other.type;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -50,4 +58,28 @@ public class NarSysLib {
 	public void setType(String type) {
 		this.type = type;
 	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof NarSysLib)) {
+			return false;
+		}
+		final NarSysLib other = (NarSysLib) obj;
+		return equal(name, other.name) && equal(type, other.type);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 1;
+		result = 31 * result + (name != null ? name.hashCode() : 0);
+		result = 31 * result + (type != null ? type.hashCode() : 0);
+		return result;
+	}
+
+	private static boolean equal(final Object a, final Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
 }
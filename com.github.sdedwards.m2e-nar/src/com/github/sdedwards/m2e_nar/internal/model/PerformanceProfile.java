@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * Maven Integration for Eclipse CDT
+ * %%
+ * Copyright (C) 2014 Stephen Edwards
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.sdedwards.m2e_nar.internal.model;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Named performance profiles which add to the optimisation level of the NAR
+ * compiler and linker settings. They are selected with the
+ * m2e.nar.performanceProfiles property as a comma separated list of ids.
+ */
+public enum PerformanceProfile {
+	/** Tune the code for the building machine, with -O3 when optimising */
+	NATIVE("native"),
+	/** Link time optimisation */
+	LTO("lto"),
+	/** Section per function and data item, unused ones dropped on linking */
+	SIZE_SPEED("size-speed"),
+	/** Relaxed IEEE floating point semantics */
+	FAST_MATH("fast-math"),
+	/** Call external functions through the GOT and bind them at load time */
+	NO_PLT("no-plt");
+
+	public static final String PROPERTY_KEY = "m2e.nar.performanceProfiles";
+
+	private final String id;
+
+	private PerformanceProfile(final String id) {
+		this.id = id;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Parses a comma separated list of profile ids.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if an id is not known
+	 */
+	public static Set<PerformanceProfile> parse(final String ids) {
+		final Set<PerformanceProfile> profiles = EnumSet.noneOf(PerformanceProfile.class);
+		if (ids == null) {
+			return profiles;
+		}
+		for (String id : ids.split(",")) {
+			id = id.trim();
+			if (id.length() == 0) {
+				continue;
+			}
+			profiles.add(fromId(id));
+		}
+		return profiles;
+	}
+
+	private static PerformanceProfile fromId(final String id) {
+		for (final PerformanceProfile profile : values()) {
+			if (profile.id.equalsIgnoreCase(id)) {
+				return profile;
+			}
+		}
+		throw new IllegalArgumentException("Unknown performance profile " + id);
+	}
+}